@@ -3,7 +3,21 @@ package com.pointage.app;
 import android.app.Application;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
+import android.util.Log;
+
+import com.pointage.app.data.HistoryRepository;
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.data.ShiftRules;
+import com.pointage.app.excel.WeekCalendar;
+import com.pointage.app.excel.WeekFileLock;
+import com.pointage.app.excel.WeeklyWorkbookSession;
+import com.pointage.app.sync.NextWeekPrewarmJob;
+import com.pointage.app.sync.TourSyncWorker;
 
 public class App extends Application {
     public static final String CHANNEL_ID = "pointage_channel";
@@ -20,5 +34,39 @@ public class App extends Application {
             NotificationManager nm = getSystemService(NotificationManager.class);
             if (nm != null) nm.createNotificationChannel(ch);
         }
+        // Bornes de créneau (config) ; changées → historique reclassé en arrière-plan
+        if (ShiftRules.load(this)) {
+            new Thread(() -> {
+                try {
+                    HistoryStore.reclassify(this);
+                    ShiftRules.markApplied(this);
+                } catch (Throwable t) {
+                    Log.e("App", "reclassify failed: " + t.getMessage(), t);
+                }
+            }, "shift-reclassify").start();
+        }
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                ShiftRules.onTimeZoneChanged();
+                WeekCalendar.invalidate();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        // Tours journalisés mais pas encore appliqués (process tué avant le drain)
+        TourSyncWorker.get(this).drainAsync();
+        // Classeur de la semaine prochaine préparé pendant le week-end
+        NextWeekPrewarmJob.schedule(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Le classeur de la semaine peut peser plusieurs Mo une fois parsé
+        WeeklyWorkbookSession.get().onTrimMemory(level);
+        HistoryRepository.get(this).onTrimMemory(level);
+        if (level == TRIM_MEMORY_UI_HIDDEN) {
+            // Passage en arrière-plan : bilan des attentes sur pointage.lock depuis le démarrage
+            Log.i("App", "WeekFileLock: " + WeekFileLock.stats());
+        }
     }
 }
@@ -35,14 +35,19 @@ import androidx.core.content.FileProvider;
 
 import com.pointage.app.databinding.ActivityMainBinding;
 import com.pointage.app.excel.ExcelHelper;
+import com.pointage.app.excel.ReportExporter;
+import com.pointage.app.excel.WeekBackfill;
+import com.pointage.app.excel.WeekFileVersions;
+import com.pointage.app.excel.WorkbookShareProvider;
 import com.pointage.app.history.HistoryActivity;
-import com.pointage.app.data.HistoryStore;
-import com.pointage.app.data.TourClassifier;
-import com.pointage.app.data.TourEntry;
+import com.pointage.app.sync.TourSyncWorker;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.text.DateFormat;
+import java.time.YearMonth;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
@@ -158,46 +163,16 @@ public class MainActivity extends AppCompatActivity {
         toggleButtons(false);
         updateStatus(false);
 
-        boolean ok = ExcelHelper.recordTour(this, startAt, endAt);
-
-        try {
-            Object period = safeClassify(startAt, endAt);
-            TourEntry entry = safeBuildTourEntry(startAt, endAt, period);
-            if (entry != null) {
-                HistoryStore.add(this, startAt, endAt, (period != null ? period.toString() : "Après-midi"));
-            }
-        } catch (Throwable t) {
-            Toast.makeText(this, "Historique non mis à jour : " + t.getMessage(), Toast.LENGTH_SHORT).show();
+        // Write-behind : journal fsync'd ici, Excel + historique appliqués par le worker
+        String base = "Tournée terminée. Durée ~ " + (durationMs / 60000) + " min";
+        boolean queued = TourSyncWorker.get(this).submit(startAt, endAt, (excelOk, historyOk, tours) -> {
+            String msg = base + (excelOk ? " (Excel OK)" : " (Excel KO)");
+            if (!historyOk) msg += " — historique non mis à jour";
+            Toast.makeText(getApplicationContext(), msg, Toast.LENGTH_LONG).show();
+        });
+        if (!queued) {
+            Toast.makeText(this, base + " — enregistrement impossible (voir logs)", Toast.LENGTH_LONG).show();
         }
-
-        String msg = "Tournée terminée. Durée ~ " + (durationMs / 60000) + " min" + (ok ? " (Excel OK)" : " (Excel KO)");
-        Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-    }
-
-    private Object safeClassify(long startAt, long endAt) {
-        try {
-            Method m = TourClassifier.class.getMethod("classify", long.class, long.class);
-            return m.invoke(null, startAt, endAt);
-        } catch (Throwable ignored) { }
-        return null;
-    }
-
-    private TourEntry safeBuildTourEntry(long startAt, long endAt, @Nullable Object period) {
-        try {
-            if (period != null) {
-                try {
-                    Method mExact = TourEntry.class.getMethod("from", long.class, long.class, period.getClass());
-                    Object obj = mExact.invoke(null, startAt, endAt, period);
-                    if (obj instanceof TourEntry) return (TourEntry) obj;
-                } catch (NoSuchMethodException ignored) { }
-                try {
-                    Method mStr = TourEntry.class.getMethod("from", long.class, long.class, String.class);
-                    Object obj = mStr.invoke(null, startAt, endAt, period.toString());
-                    if (obj instanceof TourEntry) return (TourEntry) obj;
-                } catch (NoSuchMethodException ignored) { }
-            }
-        } catch (Throwable ignored) { }
-        return null;
     }
 
     // ===== Chrono/UI/Statut =====
@@ -343,8 +318,9 @@ public class MainActivity extends AppCompatActivity {
                     String name = input.getText() != null ? input.getText().toString().trim() : "";
                     sp.edit().putString(KEY_USER_NAME, name).apply();
 
-                    boolean ok = ExcelHelper.ensureWeekFileAndWriteName(this, name);
-                    Toast.makeText(this, ok ? "Nom écrit dans Excel" : "Échec écriture du nom (voir logs)", Toast.LENGTH_LONG).show();
+                    // attente du verrou + chargement + sauvegarde : hors thread UI, résultat reposté ici
+                    TourSyncWorker.get(this).writeNameAsync(name, ok -> Toast.makeText(getApplicationContext(),
+                            ok ? "Nom écrit dans Excel" : "Échec écriture du nom (voir logs)", Toast.LENGTH_LONG).show());
 
                     long startAt = sp.getLong(KEY_START_AT, 0L);
                     if (startAt > 0L) {
@@ -358,16 +334,98 @@ public class MainActivity extends AppCompatActivity {
 
     // ===== Fichier de la semaine : Ouvrir ou Partager =====
     private void openOrShareDialog() {
-        String[] items = new String[]{"Ouvrir", "Partager"};
+        String[] items = new String[]{"Ouvrir", "Partager", "Relevé du mois", "Versions précédentes",
+                "Reconstruire les semaines passées"};
         new AlertDialog.Builder(this)
                 .setTitle("Fichier de la semaine")
                 .setItems(items, (dialog, which) -> {
                     if (which == 0) openCurrentExcel();
-                    else shareCurrentExcel();
+                    else if (which == 1) shareCurrentExcel();
+                    else if (which == 2) shareMonthlyReport();
+                    else if (which == 3) showVersionsDialog();
+                    else rebuildPastWeeks();
                 })
                 .show();
     }
 
+    // ===== Relevé mensuel (généré hors thread UI depuis l'historique) =====
+    private void shareMonthlyReport() {
+        Toast.makeText(this, "Génération du relevé…", Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            try {
+                File report = ReportExporter.exportMonth(getApplicationContext(), YearMonth.now());
+                runOnUiThread(() -> {
+                    try {
+                        Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", report);
+                        Intent share = new Intent(Intent.ACTION_SEND);
+                        share.setType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+                        share.putExtra(Intent.EXTRA_STREAM, uri);
+                        share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                        startActivity(Intent.createChooser(share, "Partager le relevé"));
+                    } catch (Throwable t) {
+                        Toast.makeText(this, "Partage indisponible: " + t.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                });
+            } catch (Throwable t) {
+                runOnUiThread(() -> Toast.makeText(this, "Échec du relevé: " + t.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        }, "report-export").start();
+    }
+
+    // ===== Versions précédentes du fichier de la semaine (WeekFileVersions) =====
+    private void showVersionsDialog() {
+        File f = ExcelHelper.getWeekFile(this);
+        List<WeekFileVersions.Generation> gens = WeekFileVersions.list(f);
+        if (gens.isEmpty()) {
+            Toast.makeText(this, "Aucune version précédente cette semaine", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        DateFormat fmt = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, Locale.getDefault());
+        String[] items = new String[gens.size()];
+        for (int i = 0; i < items.length; i++) {
+            WeekFileVersions.Generation g = gens.get(i);
+            items[i] = fmt.format(new Date(g.timeMs)) + " • " + g.cause + (g.cells.isEmpty() ? "" : "\n" + g.cells);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Versions précédentes")
+                .setItems(items, (dialog, which) -> confirmRestore(f, gens.get(which), items[which]))
+                .setNegativeButton("Fermer", null)
+                .show();
+    }
+
+    private void confirmRestore(File f, WeekFileVersions.Generation g, String label) {
+        new AlertDialog.Builder(this)
+                .setTitle("Restaurer cette version ?")
+                .setMessage(label + "\n\nLa version actuelle est conservée et pourra être restaurée à son tour.")
+                .setPositiveButton("Restaurer", (d, which) -> new Thread(() -> {
+                    try {
+                        WeekFileVersions.restore(f, g.id);
+                        runOnUiThread(() -> Toast.makeText(this, "Version restaurée", Toast.LENGTH_SHORT).show());
+                    } catch (Throwable t) {
+                        runOnUiThread(() -> Toast.makeText(this, "Échec de la restauration: " + t.getMessage(), Toast.LENGTH_LONG).show());
+                    }
+                }, "week-restore").start())
+                .setNegativeButton("Annuler", null)
+                .show();
+    }
+
+    // ===== Archives des semaines passées (reconstruites hors thread UI depuis l'historique) =====
+    private void rebuildPastWeeks() {
+        Toast.makeText(this, "Reconstruction des semaines passées…", Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            try {
+                // archives existantes conservées : seules les semaines sans classeur sont recréées
+                WeekBackfill.Report r = WeekBackfill.run(getApplicationContext(), false, null);
+                String msg = (r.failed == 0)
+                        ? r.written + " semaine(s) reconstruite(s), " + r.skipped + " déjà présente(s)"
+                        : r.written + " semaine(s) reconstruite(s), " + r.failed + " échec(s) (voir logs)";
+                runOnUiThread(() -> Toast.makeText(this, msg, Toast.LENGTH_LONG).show());
+            } catch (Throwable t) {
+                runOnUiThread(() -> Toast.makeText(this, "Échec de la reconstruction: " + t.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        }, "week-backfill").start();
+    }
+
     private File resolveCurrentExcelOrNull() {
         File docsDir = getExternalFilesDir(android.os.Environment.DIRECTORY_DOCUMENTS);
         if (docsDir == null) return null;
@@ -381,9 +439,10 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText(this, "Fichier de la semaine introuvable.", Toast.LENGTH_SHORT).show();
                 return;
             }
-            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", excel);
+            // Instantané servi par pipe : jamais le fichier de travail en cours d'écriture
+            Uri uri = WorkbookShareProvider.currentWeekUri(this);
             Intent view = new Intent(Intent.ACTION_VIEW);
-            view.setDataAndType(uri, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            view.setDataAndType(uri, WorkbookShareProvider.MIME_XLSX);
             view.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
             startActivity(view);
         } catch (Throwable t) {
@@ -398,9 +457,9 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText(this, "Fichier Excel introuvable.", Toast.LENGTH_SHORT).show();
                 return;
             }
-            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", excel);
+            Uri uri = WorkbookShareProvider.currentWeekUri(this);
             Intent share = new Intent(Intent.ACTION_SEND);
-            share.setType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            share.setType(WorkbookShareProvider.MIME_XLSX);
             share.putExtra(Intent.EXTRA_STREAM, uri);
             share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
             startActivity(Intent.createChooser(share, "Partager le pointage"));
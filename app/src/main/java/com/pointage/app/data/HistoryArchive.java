@@ -0,0 +1,324 @@
+package com.pointage.app.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.pointage.app.util.AtomicFiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archive binaire des années scellées : un segment par année (history_archive/<année>.seg), en lecture seule.
+ * - Tour = varint zigzag (startAt − startAt précédent) + varint zigzag (endAt − startAt) + 1 octet créneau
+ *   → 5 à 8 octets par tour au lieu d'une ligne SQLite (ou d'un objet JSON)
+ * - Pied de segment : index par semaine ISO (clé, offset, startAt absolu du premier tour)
+ * - Lecture par MappedByteBuffer : on saute à la semaine voulue et on décode jusqu'à la fin de la plage,
+ *   le segment n'est jamais parsé en entier
+ * Format : en-tête [magic, année, nombre] · tours · index [semaine, offset, premier startAt]* · [offset index, nb semaines, magic]
+ */
+final class HistoryArchive {
+
+    private static final String TAG = "HistoryArchive";
+    static final String DIR_NAME = "history_archive";
+    private static final String EXT = ".seg";
+
+    private static final int MAGIC = 0x50534731;         // "PSG1"
+    private static final int HEADER_SIZE = 12;
+    private static final int WEEK_ENTRY_SIZE = 16;       // semaine (4) + offset (4) + premier startAt (8)
+    private static final int TRAILER_SIZE = 12;
+    private static final TourClassifier.Period[] PERIODS = TourClassifier.Period.values();
+
+    private static volatile HistoryArchive instance;
+
+    private final File dir;
+    private int[] years;                                    // années scellées, triées ; null = à relister
+    private final Map<Integer, Segment> mapped = new HashMap<>();
+
+    /** Reçoit les tours décodés ; false = arrêter. */
+    interface Sink {
+        boolean accept(long startAt, long endAt, TourClassifier.Period p) throws Exception;
+    }
+
+    HistoryArchive(File dir) { // hors get() : tests, sur un répertoire temporaire
+        this.dir = dir;
+    }
+
+    static HistoryArchive get(Context ctx) {
+        HistoryArchive a = instance;
+        if (a == null) {
+            synchronized (HistoryArchive.class) {
+                a = instance;
+                if (a == null) {
+                    a = new HistoryArchive(new File(ctx.getApplicationContext().getFilesDir(), DIR_NAME));
+                    instance = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    /** Années scellées, triées. */
+    synchronized int[] sealedYears() {
+        if (years == null) {
+            List<Integer> found = new ArrayList<>();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    String n = f.getName();
+                    if (!n.endsWith(EXT)) continue;
+                    try {
+                        found.add(Integer.parseInt(n.substring(0, n.length() - EXT.length())));
+                    } catch (NumberFormatException ignore) {
+                        // fichier étranger : ignoré
+                    }
+                }
+            }
+            years = new int[found.size()];
+            for (int i = 0; i < years.length; i++) years[i] = found.get(i);
+            Arrays.sort(years);
+        }
+        return years;
+    }
+
+    boolean isSealed(int year) {
+        return Arrays.binarySearch(sealedYears(), year) >= 0;
+    }
+
+    /** true si le tour (startAt, endAt) est déjà dans une année scellée. */
+    boolean contains(long startAt, long endAt) throws Exception {
+        int year = Instant.ofEpochMilli(startAt).atZone(ZoneId.systemDefault()).getYear();
+        if (!isSealed(year)) return false;
+        boolean[] found = { false };
+        forEach(year, startAt, startAt + 1, Long.MIN_VALUE, Long.MIN_VALUE, null, (s, e, p) -> {
+            if (e == endAt) {
+                found[0] = true;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Tours de l'année {@code year} dont le début est dans [fromMs, toMs[, strictement après (afterStart, afterEnd),
+     * du créneau {@code period} (null = tous), dans l'ordre (startAt, endAt).
+     * Retourne false si le sink a demandé l'arrêt.
+     */
+    boolean forEach(int year, long fromMs, long toMs, long afterStart, long afterEnd,
+                    TourClassifier.Period period, Sink sink) throws Exception {
+        Segment seg = segment(year);
+        if (seg == null) return true;
+        ByteBuffer b = seg.buf.duplicate();
+
+        // Semaine de départ : dernière entrée d'index dont la clé ≤ semaine de max(fromMs, afterStart)
+        long seekMs = Math.max(fromMs, afterStart);
+        int w = seg.findWeek(weekKey(seekMs, ZoneId.systemDefault()));
+        int pos = b.getInt(seg.indexOffset + w * WEEK_ENTRY_SIZE + 4);
+        long start = b.getLong(seg.indexOffset + w * WEEK_ENTRY_SIZE + 8);
+        b.position(pos);
+        readVarLong(b); // delta du premier tour de la semaine : remplacé par le startAt absolu de l'index
+        boolean first = true;
+
+        while (b.position() < seg.indexOffset) {
+            if (!first) start += zigzagDecode(readVarLong(b));
+            first = false;
+            long end = start + zigzagDecode(readVarLong(b));
+            TourClassifier.Period p = PERIODS[b.get()];
+
+            if (start >= toMs) return true; // trié : rien au-delà
+            if (start < fromMs) continue;
+            if (start < afterStart || (start == afterStart && end <= afterEnd)) continue;
+            if (period != null && p != period) continue;
+            if (!sink.accept(start, end, p)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Écrit le segment de {@code year} à partir de tours triés par (startAt, endAt), sans doublon
+     * (.tmp + fsync + rename), puis le passe en lecture seule. Refuse de réécrire une année déjà scellée
+     * (seul reclassify() réécrit un segment).
+     */
+    synchronized void seal(int year, TourTable tours) throws IOException {
+        if (isSealed(year)) throw new IllegalStateException("Année déjà scellée : " + year);
+        write(year, tours);
+    }
+
+    /**
+     * Recalcule le créneau des tours scellés avec les règles en vigueur (ShiftRules) ; seuls les segments
+     * dont un tour change de créneau sont réécrits. Retourne le nombre de tours reclassés.
+     */
+    synchronized int reclassify() throws Exception {
+        int changed = 0;
+        for (int year : sealedYears()) {
+            TourTable.Builder b = new TourTable.Builder();
+            int[] diff = { 0 };
+            forEach(year, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, null, (s, e, p) -> {
+                b.add(s, e); // créneau recalculé
+                if (TourClassifier.classify(s, e) != p) diff[0]++;
+                return true;
+            });
+            if (diff[0] == 0) continue;
+            mapped.remove(year); // la vue déjà mappée garde l'ancien fichier
+            File f = new File(dir, year + EXT);
+            //noinspection ResultOfMethodCallIgnored
+            f.setWritable(true);
+            write(year, b.build());
+            changed += diff[0];
+        }
+        return changed;
+    }
+
+    private void write(int year, TourTable tours) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Impossible de créer " + dir);
+
+        ZoneId zone = ZoneId.systemDefault();
+        int n = tours.size();
+        ByteBuffer body = ByteBuffer.allocate(HEADER_SIZE + n * 21 + TRAILER_SIZE);
+        List<long[]> index = new ArrayList<>(); // {semaine, offset, premier startAt}
+        body.putInt(MAGIC).putInt(year).putInt(n);
+
+        long prev = 0L;
+        long lastWeek = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long s = tours.startAt(i);
+            long e = tours.endAt(i);
+            long wk = weekKey(s, zone);
+            if (wk != lastWeek) {
+                index.add(new long[] { wk, body.position(), s });
+                lastWeek = wk;
+            }
+            writeVarLong(body, zigzagEncode(s - prev));
+            writeVarLong(body, zigzagEncode(e - s));
+            body.put((byte) tours.period(i).ordinal());
+            prev = s;
+        }
+        if (index.isEmpty()) index.add(new long[] { 0L, body.position(), 0L }); // segment vide mais valide
+
+        int indexOffset = body.position();
+        ByteBuffer out = ByteBuffer.allocate(indexOffset + index.size() * WEEK_ENTRY_SIZE + TRAILER_SIZE);
+        body.flip();
+        out.put(body);
+        for (long[] en : index) out.putInt((int) en[0]).putInt((int) en[1]).putLong(en[2]);
+        out.putInt(indexOffset).putInt(index.size()).putInt(MAGIC);
+        out.flip();
+
+        File dest = new File(dir, year + EXT);
+        AtomicFiles.write(dest, fos -> {
+            FileChannel ch = fos.getChannel();
+            while (out.hasRemaining()) ch.write(out);
+        });
+        //noinspection ResultOfMethodCallIgnored
+        dest.setReadOnly();
+        years = null;
+        Log.d(TAG, "write: " + year + " → " + n + " tour(s), " + dest.length() + " octets");
+    }
+
+    // ------------------- Interne -------------------
+
+    /** Segment mappé en mémoire (une fois par process), ou null si l'année n'est pas scellée. */
+    private synchronized Segment segment(int year) throws IOException {
+        Segment seg = mapped.get(year);
+        if (seg != null) return seg;
+        if (!isSealed(year)) return null;
+        File f = new File(dir, year + EXT);
+        try (FileInputStream fis = new FileInputStream(f); FileChannel ch = fis.getChannel()) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // reste valide après close
+            seg = Segment.open(buf, f);
+        }
+        mapped.put(year, seg);
+        return seg;
+    }
+
+    private static final class Segment {
+        final ByteBuffer buf;
+        final int indexOffset;
+        final int weekCount;
+
+        private Segment(ByteBuffer buf, int indexOffset, int weekCount) {
+            this.buf = buf;
+            this.indexOffset = indexOffset;
+            this.weekCount = weekCount;
+        }
+
+        static Segment open(ByteBuffer buf, File f) throws IOException {
+            int size = buf.limit();
+            if (size < HEADER_SIZE + TRAILER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(size - 4) != MAGIC) {
+                throw new IOException("Segment invalide : " + f.getName());
+            }
+            int indexOffset = buf.getInt(size - TRAILER_SIZE);
+            int weekCount = buf.getInt(size - TRAILER_SIZE + 4);
+            if (indexOffset < HEADER_SIZE || weekCount < 1
+                    || indexOffset + (long) weekCount * WEEK_ENTRY_SIZE != size - TRAILER_SIZE) {
+                throw new IOException("Index de segment invalide : " + f.getName());
+            }
+            return new Segment(buf, indexOffset, weekCount);
+        }
+
+        /** Dernière semaine indexée de clé ≤ {@code key} (0 si toutes sont après). */
+        int findWeek(long key) {
+            int lo = 0;
+            int hi = weekCount - 1;
+            int best = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buf.getInt(indexOffset + mid * WEEK_ENTRY_SIZE) <= key) {
+                    best = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return best;
+        }
+    }
+
+    /** Année ISO * 100 + semaine (croît avec le temps, y compris autour du 1er janvier). */
+    static long weekKey(long epochMs, ZoneId zone) {
+        LocalDate d = Instant.ofEpochMilli(epochMs).atZone(zone).toLocalDate();
+        return d.get(IsoFields.WEEK_BASED_YEAR) * 100L + d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+    }
+
+    private static long zigzagEncode(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long zigzagDecode(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    private static long readVarLong(ByteBuffer b) {
+        long v = 0L;
+        int shift = 0;
+        byte x;
+        do {
+            x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            shift += 7;
+        } while ((x & 0x80) != 0);
+        return v;
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.pointage.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.IsoFields;
+import java.util.Map;
+
+/**
+ * Base SQLite de l'historique (history.db), table {@code tours}.
+ * - Clé (start_at, end_at) : même règle de doublon que l'ancien stockage, INSERT OR REPLACE = dernier libellé gagne
+ * - La clé primaire sert d'index sur start_at ; index (iso_week, start_at) et (period, start_at) pour les filtres
+ * - Insertions groupées dans UNE transaction, via un SQLiteStatement compilé une fois et réutilisé
+ * - Lectures : seules les lignes de la plage demandée, dans l'ordre de start_at
+ * - v2 : table rollups (minutes par jour / semaine ISO / mois × créneau), tenue à jour à chaque insertion (HourRollups)
+ * - Années passées scellées : tours déplacés vers HistoryArchive (moveToArchive), cumuls conservés ici
+ */
+final class HistoryDb extends SQLiteOpenHelper {
+
+    static final String DB_NAME = "history.db";
+    private static final int DB_VERSION = 2;
+
+    static final String TABLE = "tours";
+    static final String COL_START = "start_at";
+    static final String COL_END = "end_at";
+    static final String COL_LABEL = "slot_label";
+    static final String COL_WEEK = "iso_week"; // année ISO * 100 + semaine, ex. 202542
+    static final String COL_PERIOD = "period"; // TourClassifier.Period.name()
+
+    static final String TABLE_ROLLUPS = "rollups";
+
+    private static volatile HistoryDb instance;
+
+    // compilés au premier lot, gardés ensuite
+    private SQLiteStatement insert;
+    private SQLiteStatement updateLabel;
+    private SQLiteStatement ensureBucket;
+    private SQLiteStatement addMinutes;
+
+    private HistoryDb(Context ctx) {
+        super(ctx, DB_NAME, null, DB_VERSION);
+        // lectures (écran, export) pendant une insertion du worker
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    static HistoryDb get(Context ctx) {
+        HistoryDb db = instance;
+        if (db == null) {
+            synchronized (HistoryDb.class) {
+                db = instance;
+                if (db == null) {
+                    db = new HistoryDb(ctx.getApplicationContext());
+                    instance = db;
+                }
+            }
+        }
+        return db;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_START + " INTEGER NOT NULL, "
+                + COL_END + " INTEGER NOT NULL, "
+                + COL_LABEL + " TEXT NOT NULL DEFAULT '', "
+                + COL_WEEK + " INTEGER NOT NULL, "
+                + COL_PERIOD + " TEXT NOT NULL, "
+                + "PRIMARY KEY (" + COL_START + ", " + COL_END + "))");
+        db.execSQL("CREATE INDEX idx_tours_week ON " + TABLE + " (" + COL_WEEK + ", " + COL_START + ")");
+        db.execSQL("CREATE INDEX idx_tours_period ON " + TABLE + " (" + COL_PERIOD + ", " + COL_START + ")");
+        createRollups(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createRollups(db);
+            try {
+                rebuildRollups(db);
+            } catch (Exception e) {
+                throw new IllegalStateException("rollups: reconstruction impossible", e);
+            }
+        }
+    }
+
+    private static void createRollups(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ROLLUPS + " ("
+                + "kind INTEGER NOT NULL, "
+                + "bucket INTEGER NOT NULL, "
+                + "period INTEGER NOT NULL, "   // TourClassifier.Period.ordinal()
+                + "minutes INTEGER NOT NULL, "
+                + "PRIMARY KEY (kind, bucket, period)) WITHOUT ROWID");
+    }
+
+    /**
+     * Insère tout le lot dans une seule transaction. Tour déjà présent (même clé) : seul le libellé
+     * est remplacé, les cumuls ne bougent pas (durée identique).
+     */
+    synchronized void insertAll(long[] startAt, long[] endAt, String[] slotLabels) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (insert == null) {
+            insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE + " ("
+                    + COL_START + ", " + COL_END + ", " + COL_LABEL + ", " + COL_WEEK + ", " + COL_PERIOD
+                    + ") VALUES (?, ?, ?, ?, ?)");
+            updateLabel = db.compileStatement("UPDATE " + TABLE + " SET " + COL_LABEL + " = ? WHERE "
+                    + COL_START + " = ? AND " + COL_END + " = ?");
+            ensureBucket = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ROLLUPS
+                    + " (kind, bucket, period, minutes) VALUES (?, ?, ?, 0)");
+            addMinutes = db.compileStatement("UPDATE " + TABLE_ROLLUPS
+                    + " SET minutes = minutes + ? WHERE kind = ? AND bucket = ? AND period = ?");
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < startAt.length; i++) {
+                String label = (slotLabels != null && slotLabels[i] != null) ? slotLabels[i] : "";
+                TourClassifier.Period p = TourClassifier.classify(startAt[i], endAt[i]);
+                insert.clearBindings();
+                insert.bindLong(1, startAt[i]);
+                insert.bindLong(2, endAt[i]);
+                insert.bindString(3, label);
+                insert.bindLong(4, isoWeek(startAt[i], zone));
+                insert.bindString(5, p.name());
+                if (insert.executeInsert() == -1L) {
+                    // déjà connu : dernier libellé gagne, comme avant
+                    updateLabel.clearBindings();
+                    updateLabel.bindString(1, label);
+                    updateLabel.bindLong(2, startAt[i]);
+                    updateLabel.bindLong(3, endAt[i]);
+                    updateLabel.executeUpdateDelete();
+                    continue;
+                }
+                long minutes = HourRollups.minutesOf(startAt[i], endAt[i]);
+                for (int kind : HourRollups.KINDS) {
+                    long bucket = HourRollups.bucket(kind, startAt[i], zone);
+                    ensureBucket.bindLong(1, kind);
+                    ensureBucket.bindLong(2, bucket);
+                    ensureBucket.bindLong(3, p.ordinal());
+                    ensureBucket.executeInsert();
+                    addMinutes.bindLong(1, minutes);
+                    addMinutes.bindLong(2, kind);
+                    addMinutes.bindLong(3, bucket);
+                    addMinutes.bindLong(4, p.ordinal());
+                    addMinutes.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Minutes du seau (kind, bucket) par créneau : lecture par clé primaire, 3 lignes au plus. */
+    HourRollups.Totals totals(int kind, long bucket) {
+        long[] byPeriod = new long[TourClassifier.Period.values().length];
+        try (Cursor c = getReadableDatabase().rawQuery("SELECT period, minutes FROM " + TABLE_ROLLUPS
+                + " WHERE kind = ? AND bucket = ?", new String[] { Integer.toString(kind), Long.toString(bucket) })) {
+            while (c.moveToNext()) {
+                int p = c.getInt(0);
+                if (p >= 0 && p < byPeriod.length) byPeriod[p] = c.getLong(1);
+            }
+        }
+        return new HourRollups.Totals(byPeriod);
+    }
+
+    /** Recalcule toute la table rollups depuis {@code all} : base + années archivées (agrégation parallèle, une transaction). */
+    synchronized void rebuildRollups(TourTable all) throws Exception {
+        writeRollups(getWritableDatabase(), HourRollups.aggregate(all));
+    }
+
+    private static void rebuildRollups(SQLiteDatabase db) throws Exception {
+        writeRollups(db, HourRollups.aggregate(readTable(db, null, null)));
+    }
+
+    private static void writeRollups(SQLiteDatabase db, Map<Long, Long> sums) {
+        // onUpgrade tourne déjà dans une transaction : imbrication gérée par SQLiteDatabase
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_ROLLUPS);
+            SQLiteStatement st = db.compileStatement("INSERT INTO " + TABLE_ROLLUPS
+                    + " (kind, bucket, period, minutes) VALUES (?, ?, ?, ?)");
+            try {
+                for (Map.Entry<Long, Long> e : sums.entrySet()) {
+                    long key = e.getKey();
+                    st.bindLong(1, HourRollups.kindOf(key));
+                    st.bindLong(2, HourRollups.bucketOf(key));
+                    st.bindLong(3, HourRollups.periodOf(key));
+                    st.bindLong(4, e.getValue());
+                    st.executeInsert();
+                }
+            } finally {
+                st.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Tours dont le début est dans [fromMs, toMs[, strictement après (afterStart, afterEnd), d'un créneau
+     * (null = tous), triés par (start_at, end_at) ; au plus {@code limit} (0 = sans limite).
+     * Pagination par clé, sans OFFSET : coût indépendant de la position dans l'historique.
+     * Retourne le nombre de tours transmis.
+     */
+    int scan(long fromMs, long toMs, long afterStart, long afterEnd, TourClassifier.Period period,
+             int limit, HistoryStore.Visitor visitor) throws Exception {
+        // pas de row values (SQLite ≥ 3.15) : API 24 embarque SQLite 3.9
+        String where = COL_START + " >= ? AND " + COL_START + " < ? AND "
+                + COL_START + " >= ? AND (" + COL_START + " > ? OR " + COL_END + " > ?)";
+        String[] args;
+        if (period == null) {
+            args = new String[] { Long.toString(fromMs), Long.toString(toMs),
+                    Long.toString(afterStart), Long.toString(afterStart), Long.toString(afterEnd) };
+        } else {
+            where = COL_PERIOD + " = ? AND " + where;
+            args = new String[] { period.name(), Long.toString(fromMs), Long.toString(toMs),
+                    Long.toString(afterStart), Long.toString(afterStart), Long.toString(afterEnd) };
+        }
+        return query(where, args, visitor, limit);
+    }
+
+    /**
+     * Recalcule la colonne period avec les règles en vigueur (ShiftRules.classifyAll, après changement de bornes),
+     * dans une transaction. Retourne le nombre de tours reclassés ; les cumuls sont à reconstruire ensuite.
+     */
+    synchronized int reclassify() {
+        SQLiteDatabase db = getWritableDatabase();
+        int n;
+        long[] starts;
+        long[] ends;
+        byte[] before;
+        try (Cursor c = db.rawQuery("SELECT " + COL_START + ", " + COL_END + ", " + COL_PERIOD + " FROM " + TABLE, null)) {
+            n = c.getCount();
+            starts = new long[n];
+            ends = new long[n];
+            before = new byte[n];
+            for (int i = 0; i < n && c.moveToNext(); i++) {
+                starts[i] = c.getLong(0);
+                ends[i] = c.getLong(1);
+                before[i] = (byte) TourClassifier.Period.valueOf(c.getString(2)).ordinal();
+            }
+        }
+        byte[] after = ShiftRules.current().classifyAll(starts, ends);
+        TourClassifier.Period[] periods = TourClassifier.Period.values();
+
+        int changed = 0;
+        db.beginTransaction();
+        try (SQLiteStatement st = db.compileStatement("UPDATE " + TABLE + " SET " + COL_PERIOD + " = ? WHERE "
+                + COL_START + " = ? AND " + COL_END + " = ?")) {
+            for (int i = 0; i < n; i++) {
+                if (after[i] == before[i]) continue;
+                st.bindString(1, periods[after[i]].name());
+                st.bindLong(2, starts[i]);
+                st.bindLong(3, ends[i]);
+                st.executeUpdateDelete();
+                changed++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return changed;
+    }
+
+    /** Début du plus ancien tour en base, ou Long.MAX_VALUE si elle est vide. */
+    long firstStart() {
+        try (Cursor c = getReadableDatabase().rawQuery("SELECT MIN(" + COL_START + ") FROM " + TABLE, null)) {
+            return (c.moveToFirst() && !c.isNull(0)) ? c.getLong(0) : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Scelle l'année {@code year} ([fromMs, toMs[) : ses tours sont écrits dans l'archive, puis retirés de la base.
+     * Sous le verrou d'insertAll : aucun tour ne peut arriver entre la lecture et la suppression.
+     * Les cumuls ne bougent pas (ils couvrent toujours ces tours). Retourne le nombre de tours déplacés.
+     */
+    synchronized int moveToArchive(int year, long fromMs, long toMs, HistoryArchive archive) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        String[] range = { Long.toString(fromMs), Long.toString(toMs) };
+        TourTable tours = readTable(db, COL_START + " >= ? AND " + COL_START + " < ?", range);
+        if (tours.size() == 0) return 0; // année sans tour : pas de segment
+        archive.seal(year, tours);
+        db.delete(TABLE, COL_START + " >= ? AND " + COL_START + " < ?", range);
+        return tours.size();
+    }
+
+    /** Rend au système les pages libérées (après moveToArchive). */
+    synchronized void vacuum() {
+        getWritableDatabase().execSQL("VACUUM");
+    }
+
+    static int isoWeek(long epochMs, ZoneId zone) {
+        ZonedDateTime z = Instant.ofEpochMilli(epochMs).atZone(zone);
+        return z.get(IsoFields.WEEK_BASED_YEAR) * 100 + z.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+    }
+
+    // ------------------- Interne -------------------
+
+    private static TourTable readTable(SQLiteDatabase db, String where, String[] args) {
+        TourTable.Builder b = new TourTable.Builder();
+        try (Cursor c = db.rawQuery("SELECT " + COL_START + ", " + COL_END + " FROM " + TABLE
+                + (where != null ? " WHERE " + where : "")
+                + " ORDER BY " + COL_START + ", " + COL_END, args)) {
+            while (c.moveToNext()) b.add(c.getLong(0), c.getLong(1));
+        }
+        return b.build();
+    }
+
+    // rawQuery avec arguments liés : SQLite garde la requête compilée dans son cache de statements
+    private int query(String where, String[] args, HistoryStore.Visitor visitor, int limit) throws Exception {
+        String sql = "SELECT " + COL_START + ", " + COL_END + ", " + COL_LABEL + " FROM " + TABLE
+                + (where != null ? " WHERE " + where : "")
+                + " ORDER BY " + COL_START + ", " + COL_END
+                + (limit > 0 ? " LIMIT " + limit : "");
+        int n = 0;
+        try (Cursor c = getReadableDatabase().rawQuery(sql, args)) {
+            while (c.moveToNext()) {
+                visitor.visit(c.getLong(0), c.getLong(1), c.getString(2));
+                n++;
+            }
+        }
+        return n;
+    }
+}
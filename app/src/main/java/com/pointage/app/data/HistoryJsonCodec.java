@@ -0,0 +1,84 @@
+package com.pointage.app.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Décodeur JSON en flux de l'historique (JsonReader), sans binding réflexif Gson.
+ * - Lecture : tableau d'objets décodé entrée par entrée en longs primitifs, rien n'est matérialisé
+ * - Formats acceptés : { startAt, endAt, slotLabel } (history.json, history_store.json)
+ *   et { startAt, endAt, period, … } (TourEntry.toJson, blob Prefs.KEY_HISTORY_JSON)
+ * - Arrêt anticipé : le Sink retourne false → lecture interrompue (requêtes par plage)
+ * - Entrée illisible (startAt/endAt manquants) ignorée, pas d'échec du fichier entier
+ */
+final class HistoryJsonCodec {
+
+    private HistoryJsonCodec() {}
+
+    /** Reçoit chaque entrée décodée ; false = arrêter la lecture. */
+    interface Sink {
+        boolean accept(long startAt, long endAt, String slotLabel) throws IOException;
+    }
+
+    /** Décode un tableau JSON d'entrées. Retourne le nombre d'entrées transmises au sink. */
+    static int read(Reader in, Sink sink) throws IOException {
+        JsonReader r = new JsonReader(in);
+        r.setLenient(true);
+        if (r.peek() != JsonToken.BEGIN_ARRAY) return 0; // "null", vide…
+        int count = 0;
+        r.beginArray();
+        while (r.hasNext()) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) {
+                r.skipValue();
+                continue;
+            }
+            long startAt = -1L;
+            long endAt = -1L;
+            String label = "";
+            r.beginObject();
+            while (r.hasNext()) {
+                String name = r.nextName();
+                switch (name) {
+                    case "startAt": startAt = nextLong(r); break;
+                    case "endAt":   endAt = nextLong(r); break;
+                    case "slotLabel":
+                    case "period":  label = nextString(r); break;
+                    default:        r.skipValue();
+                }
+            }
+            r.endObject();
+            if (startAt < 0L || endAt < 0L) continue;
+            count++;
+            if (!sink.accept(startAt, endAt, label)) return count;
+        }
+        r.endArray();
+        return count;
+    }
+
+    // ------------------- Interne -------------------
+
+    private static long nextLong(JsonReader r) throws IOException {
+        JsonToken t = r.peek();
+        if (t == JsonToken.NUMBER || t == JsonToken.STRING) {
+            try {
+                return r.nextLong(); // accepte aussi "123" (nombre sous forme de texte)
+            } catch (NumberFormatException e) {
+                r.skipValue(); // valeur non numérique restée en tampon
+                return -1L;
+            }
+        }
+        r.skipValue();
+        return -1L;
+    }
+
+    private static String nextString(JsonReader r) throws IOException {
+        if (r.peek() == JsonToken.NULL) {
+            r.nextNull();
+            return "";
+        }
+        return r.nextString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.pointage.app.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Lecteur de l'ancien journal de l'historique (history.log), en lecture seule.
+ * - N'est plus écrit : history.db (HistoryDb) l'a remplacé ; relu une fois par HistoryStore.importLegacy
+ * - Un enregistrement = longueur (4) + startAt (8) + endAt (8) + libellé UTF-8 + CRC32 (4)
+ * - Lecture arrêtée au premier enregistrement invalide (crash pendant une ancienne écriture), fichier intact
+ * - Doublons (même startAt/endAt) : le dernier libellé gagne, position du premier conservée
+ */
+final class HistoryLog {
+
+    private static final String TAG = "HistoryLog";
+    static final String FILE_NAME = "history.log";
+
+    private static final int LEN_SIZE = 4;
+    private static final int FIXED_SIZE = 16; // startAt + endAt
+    private static final int CRC_SIZE = 4;
+    private static final int MAX_LABEL_BYTES = 1024;
+
+    private static volatile HistoryLog instance;
+
+    private final File file;
+
+    /** Tour tel que stocké (libellé de créneau brut). */
+    static final class Record {
+        final long startAt;
+        final long endAt;
+        final String slotLabel;
+
+        Record(long startAt, long endAt, String slotLabel) {
+            this.startAt = startAt;
+            this.endAt = endAt;
+            this.slotLabel = (slotLabel == null) ? "" : slotLabel;
+        }
+    }
+
+    private HistoryLog(File file) {
+        this.file = file;
+    }
+
+    static HistoryLog get(Context ctx) {
+        HistoryLog l = instance;
+        if (l == null) {
+            synchronized (HistoryLog.class) {
+                l = instance;
+                if (l == null) {
+                    l = new HistoryLog(new File(ctx.getApplicationContext().getFilesDir(), FILE_NAME));
+                    instance = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    /** true si un ancien journal reste à importer. */
+    boolean exists() {
+        return file.exists();
+    }
+
+    File file() {
+        return file;
+    }
+
+    /** Tous les tours, dédoublonnés, dans l'ordre d'arrivée. */
+    synchronized List<Record> readAll() throws IOException {
+        LinkedHashMap<String, Record> merged = new LinkedHashMap<>();
+        if (!file.exists()) return new ArrayList<>();
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel ch = in.getChannel();
+            long size = ch.size();
+            ByteBuffer head = ByteBuffer.allocate(LEN_SIZE);
+            long pos = 0;
+            while (pos + LEN_SIZE <= size) {
+                head.clear();
+                readFully(ch, head, pos);
+                head.flip();
+                int len = head.getInt();
+                if (len < FIXED_SIZE || len > FIXED_SIZE + MAX_LABEL_BYTES || pos + LEN_SIZE + len + CRC_SIZE > size) break;
+
+                ByteBuffer body = ByteBuffer.allocate(len + CRC_SIZE);
+                readFully(ch, body, pos + LEN_SIZE);
+                body.flip();
+                if (body.getInt(len) != crcOf(body.array(), len)) break;
+
+                long startAt = body.getLong();
+                long endAt = body.getLong();
+                String label = new String(body.array(), FIXED_SIZE, len - FIXED_SIZE, StandardCharsets.UTF_8);
+                merged.put(startAt + "_" + endAt, new Record(startAt, endAt, label));
+                pos += LEN_SIZE + len + CRC_SIZE;
+            }
+            if (pos < size) {
+                Log.w(TAG, "readAll: record invalide à l'offset " + pos + ", " + (size - pos) + " octet(s) ignoré(s)");
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    // ------------------- Interne -------------------
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) > 0) { /* lecture complète */ }
+    }
+
+    private static int crcOf(byte[] data, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+        return (int) crc.getValue();
+    }
+}
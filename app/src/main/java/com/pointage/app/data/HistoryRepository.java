@@ -0,0 +1,283 @@
+package com.pointage.app.data;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache process-wide de l'historique pour l'écran Historique, chargé par fenêtres (pages) en arrière-plan.
+ * - Fenêtre en colonnes primitives (TourTable : débuts, fins, créneau) : le texte d'une ligne est formaté à l'affichage
+ * - loadMoreAsync : page suivante (pagination par clé, HistoryStore.page) ; refreshAsync : relit la fenêtre chargée
+ * - HistoryStore.add/addAll → insertion en place sans relire le disque
+ * - Listeners notifiés sur le thread UI avec un instantané immuable
+ * - onTrimMemory (mémoire basse / process en arrière-plan) → cache relâché (rechargé au prochain besoin)
+ */
+public final class HistoryRepository {
+
+    private static final String TAG = "HistoryRepository";
+
+    public static final int PAGE_SIZE = 100;
+
+    private static volatile HistoryRepository instance;
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-load");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Appelé sur le thread UI à chaque changement de la fenêtre chargée. */
+    public interface Listener {
+        void onHistoryChanged(Snapshot snapshot);
+    }
+
+    /** Fenêtre chargée (tours triés par début), immuable. */
+    public static final class Snapshot {
+        private final TourTable table;
+        private final boolean complete;
+
+        Snapshot(TourTable table, boolean complete) {
+            this.table = table;
+            this.complete = complete;
+        }
+
+        public TourTable table() { return table; }
+        public int size() { return table.size(); }
+        public long startAt(int i) { return table.startAt(i); }
+        public long endAt(int i) { return table.endAt(i); }
+        /** true si tout l'historique est chargé (plus de page à demander). */
+        public boolean isComplete() { return complete; }
+    }
+
+    private final Context app;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // null = rien de chargé ; triés par (startAt, endAt), [0, size[ utilisés
+    private long[] starts;
+    private long[] ends;
+    private byte[] periods; // TourClassifier.Period.ordinal()
+    private int size;
+    private boolean complete;
+    private boolean loading;
+    private Snapshot snapshot;
+
+    private HistoryRepository(Context app) {
+        this.app = app;
+    }
+
+    public static HistoryRepository get(Context ctx) {
+        HistoryRepository r = instance;
+        if (r == null) {
+            synchronized (HistoryRepository.class) {
+                r = instance;
+                if (r == null) {
+                    r = new HistoryRepository(ctx.getApplicationContext());
+                    instance = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /** Fenêtre déjà en mémoire, sinon null (aucun accès disque). */
+    @Nullable
+    public synchronized Snapshot peek() {
+        return (starts != null) ? snapshot() : null;
+    }
+
+    /** Page suivante en arrière-plan (sans effet si tout est chargé ou si un chargement est en cours). */
+    public void loadMoreAsync() {
+        synchronized (this) {
+            if (loading || complete) return;
+            loading = true;
+        }
+        LOADER.execute(this::loadMore);
+    }
+
+    /** Relit depuis la base la fenêtre déjà chargée (au moins une page), puis notifie. */
+    public void refreshAsync() {
+        synchronized (this) {
+            if (loading) return;
+            loading = true;
+        }
+        LOADER.execute(this::refresh);
+    }
+
+    public void addListener(Listener l) {
+        if (!listeners.contains(l)) listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /** À brancher sur Application#onTrimMemory ; mêmes niveaux que WeeklyWorkbookSession (pas UI_HIDDEN seul). */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                        && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)) {
+            synchronized (this) {
+                if (starts != null) Log.d(TAG, "onTrimMemory: cache released (" + size + " tour(s))");
+                starts = null;
+                ends = null;
+                periods = null;
+                size = 0;
+                complete = false;
+                snapshot = null;
+            }
+        }
+    }
+
+    // ------------------- Appelé par HistoryStore -------------------
+
+    /** Tours tout juste écrits en base : insérés dans la fenêtre s'ils y tombent. */
+    void onAdded(long[] startAt, long[] endAt) {
+        Snapshot now;
+        synchronized (this) {
+            if (starts == null) return; // rien en mémoire : le prochain chargement lira la base
+            boolean changed = false;
+            for (int i = 0; i < startAt.length; i++) {
+                changed |= insert(startAt[i], endAt[i], TourClassifier.classify(startAt[i], endAt[i]), false);
+            }
+            if (!changed) return;
+            snapshot = null;
+            now = snapshot();
+        }
+        notifyListeners(now);
+    }
+
+    // ------------------- Interne -------------------
+
+    private void loadMore() {
+        long afterStart;
+        long afterEnd;
+        synchronized (this) {
+            afterStart = (size > 0) ? starts[size - 1] : Long.MIN_VALUE;
+            afterEnd = (size > 0) ? ends[size - 1] : Long.MIN_VALUE;
+        }
+        TourTable page = readPage(afterStart, afterEnd, PAGE_SIZE);
+
+        Snapshot now;
+        synchronized (this) {
+            loading = false;
+            if (page == null) return;
+            if (starts == null) {
+                starts = new long[PAGE_SIZE];
+                ends = new long[PAGE_SIZE];
+                periods = new byte[PAGE_SIZE];
+            }
+            // onAdded a pu insérer entre-temps : fusion par clé plutôt qu'un ajout en bloc
+            for (int i = 0; i < page.size(); i++) insert(page.startAt(i), page.endAt(i), page.period(i), true);
+            complete = page.size() < PAGE_SIZE;
+            snapshot = null;
+            now = snapshot();
+        }
+        notifyListeners(now);
+    }
+
+    private void refresh() {
+        int window;
+        synchronized (this) {
+            window = Math.max(size, PAGE_SIZE);
+        }
+        TourTable rows = readPage(Long.MIN_VALUE, Long.MIN_VALUE, window);
+
+        Snapshot now;
+        synchronized (this) {
+            loading = false;
+            if (rows == null) return;
+            int n = rows.size();
+            int capacity = Math.max(n, PAGE_SIZE);
+            starts = new long[capacity];
+            ends = new long[capacity];
+            periods = new byte[capacity];
+            for (int i = 0; i < n; i++) {
+                starts[i] = rows.startAt(i);
+                ends[i] = rows.endAt(i);
+                periods[i] = (byte) rows.period(i).ordinal();
+            }
+            size = n;
+            complete = n < window;
+            snapshot = null;
+            now = snapshot();
+        }
+        notifyListeners(now);
+    }
+
+    /** Page lue en base, ou null en cas d'erreur (journalisée). */
+    @Nullable
+    private TourTable readPage(long afterStart, long afterEnd, int limit) {
+        long t0 = System.nanoTime();
+        TourTable.Builder b = new TourTable.Builder(limit);
+        try {
+            HistoryStore.page(app, afterStart, afterEnd, limit, (startAt, endAt, label) -> b.add(startAt, endAt));
+        } catch (Throwable t) {
+            Log.e(TAG, "readPage failed: " + t.getMessage(), t);
+            return null;
+        }
+        Log.d(TAG, "readPage: " + b.size() + " tour(s) in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+        return b.build();
+    }
+
+    /**
+     * Insère (startAt, endAt) à sa place dans la fenêtre triée ; false si déjà présent.
+     * Hors page ({@code fromPage} false), un tour postérieur à une fenêtre incomplète est ignoré :
+     * il arrivera avec sa page.
+     */
+    private boolean insert(long startAt, long endAt, TourClassifier.Period p, boolean fromPage) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(starts[mid], ends[mid], startAt, endAt);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid;
+            else return false;
+        }
+        if (!fromPage && lo == size && !complete) return false;
+        if (size == starts.length) {
+            int c = Math.max(PAGE_SIZE, size * 2);
+            starts = Arrays.copyOf(starts, c);
+            ends = Arrays.copyOf(ends, c);
+            periods = Arrays.copyOf(periods, c);
+        }
+        System.arraycopy(starts, lo, starts, lo + 1, size - lo);
+        System.arraycopy(ends, lo, ends, lo + 1, size - lo);
+        System.arraycopy(periods, lo, periods, lo + 1, size - lo);
+        starts[lo] = startAt;
+        ends[lo] = endAt;
+        periods[lo] = (byte) p.ordinal();
+        size++;
+        return true;
+    }
+
+    private static int compare(long s1, long e1, long s2, long e2) {
+        int c = Long.compare(s1, s2);
+        return (c != 0) ? c : Long.compare(e1, e2);
+    }
+
+    private Snapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(new TourTable(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size),
+                    Arrays.copyOf(periods, size)), complete);
+        }
+        return snapshot;
+    }
+
+    private void notifyListeners(Snapshot s) {
+        if (listeners.isEmpty()) return;
+        main.post(() -> {
+            for (Listener l : listeners) l.onHistoryChanged(s);
+        });
+    }
+}
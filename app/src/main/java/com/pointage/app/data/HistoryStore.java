@@ -3,154 +3,448 @@ package com.pointage.app.data;
 import android.content.Context;
 import android.util.Log;
 
-import androidx.annotation.Nullable;
-
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.NoSuchElementException;
 
 /**
- * Store JSON local des tournées pour l’écran Historique.
- * Hotfix : expose la méthode EXACTE attendue par MainActivity via réflexion :
- *   add(Context, long, long, String)
- * et fournit load(Context) utilisé par HistoryActivity.
+ * Store local des tournées pour l’écran Historique.
+ * API : add/addAll (écriture), page (écran Historique, via HistoryRepository),
+ * query (itérateur paresseux sur une plage), forEachInRange / loadTable
+ * (export, requêtes : seules les lignes utiles sont lues),
+ * totalsForDay / totalsForWeek / totalsForMonth (cumuls tenus à jour à l'insertion, HourRollups).
  *
- * Format JSON simple (liste d’objets { startAt, endAt, slotLabel }).
+ * Stockage : base SQLite indexée {@link HistoryDb} (history.db) pour l'année en cours ;
+ * années passées scellées dans {@link HistoryArchive} (segments binaires en lecture seule, sealPastYears),
+ * relus de façon transparente par les mêmes API.
+ * Les anciens stockages — journal history.log, fichiers JSON (liste d’objets { startAt, endAt, slotLabel })
+ * et blob Prefs.KEY_HISTORY_JSON — sont importés une fois (JSON décodé en flux, HistoryJsonCodec),
+ * puis renommés en *.imported / retiré des prefs.
  */
 public final class HistoryStore {
     private static final String TAG = "HistoryStore";
     private static final String PRIMARY_FILE = "history.json";
     private static final String[] LEGACY_FILES = new String[] { "history_store.json" };
+    private static final String IMPORTED_SUFFIX = ".imported";
+    private static final int QUERY_CHUNK = 256;
 
-    private static final Gson gson = new Gson();
+    private static volatile boolean legacyChecked;
 
     private HistoryStore() {}
 
-    // ==== API lue par HistoryActivity ====
+    // ==== Lecture ====
+    /** Historique complet décodé (préférer page / forEachInRange : seules les lignes utiles sont lues). */
     public static List<TourEntry> load(Context ctx) {
-        List<RawEntry> raw = loadAllRaw(ctx);
-        List<TourEntry> out = new ArrayList<>(raw.size());
-        for (RawEntry r : raw) {
-            TourEntry te = toTourEntry(r.startAt, r.endAt, r.slotLabel);
-            if (te != null) out.add(te);
+        List<TourEntry> out = new ArrayList<>();
+        try {
+            scan(ctx, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, null, 0,
+                    (startAt, endAt, label) -> out.add(toTourEntry(startAt, endAt)));
+        } catch (Throwable e) {
+            Log.e(TAG, "load failed: " + e.getMessage(), e);
         }
         return out;
     }
 
-    // ==== API EXACTE attendue par MainActivity (réflexion) ====
-    // MainActivity cherche "add(Context,long,long,String)" → on la fournit.
+    /** Au plus {@code limit} tours après (afterStart, afterEnd), triés — Long.MIN_VALUE pour la première page. */
+    public static void page(Context ctx, long afterStart, long afterEnd, int limit, Visitor visitor) throws Exception {
+        scan(ctx, Long.MIN_VALUE, Long.MAX_VALUE, afterStart, afterEnd, null, limit, visitor);
+    }
+
+    /** Tours dont le début est dans [fromMs, toMs[, en colonnes primitives (totaux sans allocation par ligne). */
+    public static TourTable loadTable(Context ctx, long fromMs, long toMs) throws Exception {
+        TourTable.Builder b = new TourTable.Builder();
+        forEachInRange(ctx, fromMs, toMs, (startAt, endAt, label) -> b.add(startAt, endAt));
+        return b.build();
+    }
+
+    /**
+     * Tours dont le début est dans [fromMs, toMs[, d'un créneau (null = tous), triés par (startAt, endAt).
+     * Itérateur paresseux : lu par tranches de {@value #QUERY_CHUNK} via l'index (pagination par clé),
+     * chaque TourEntry n'est décodé qu'à next(). Un tour ajouté hors ordre (saisie manuelle) est déjà à sa place
+     * dans l'index : aucun tri à faire. Erreur de lecture d'une tranche suivante → IllegalStateException.
+     */
+    public static Iterator<TourEntry> query(Context ctx, long fromMs, long toMs,
+                                            TourClassifier.Period periodFilter) throws Exception {
+        Context app = ctx.getApplicationContext();
+        return new RangeIterator((afterStart, afterEnd, limit, visitor) ->
+                scan(app, fromMs, toMs, afterStart, afterEnd, periodFilter, limit, visitor), QUERY_CHUNK);
+    }
+
+    // ==== Écriture ====
     public static void add(Context ctx, long startAt, long endAt, String slotLabel) {
-        try {
-            List<RawEntry> raw = loadAllRaw(ctx);
-            raw.add(new RawEntry(startAt, endAt, slotLabel));
-            writeRaw(ctx, raw);
-            Log.d(TAG, "add(String): OK (" + slotLabel + ")");
-        } catch (Throwable t) {
-            Log.e(TAG, "add(String) failed: " + t.getMessage(), t);
-        }
+        addAll(ctx, new long[] { startAt }, new long[] { endAt }, new String[] { slotLabel });
     }
 
-    // ==== Conversion Raw -> TourEntry (tolérante) ====
-    @Nullable
-    private static TourEntry toTourEntry(long startAt, long endAt, @Nullable String slotLabel) {
-        // 1) Essayer TourEntry.from(long,long, Slot)
+    /**
+     * Ajout groupé : une seule transaction SQLite pour tout le lot. Retourne true si OK.
+     * Un tour déjà présent dans une année scellée (rejeu de la file) n'est pas ré-inséré.
+     */
+    public static boolean addAll(Context ctx, long[] startAt, long[] endAt, String[] slotLabels) {
         try {
-            Class<?> slotClass = Class.forName("com.pointage.app.data.Slot");
-            Method valueOf = slotClass.getMethod("valueOf", String.class);
-            String norm = toEnumName(slotLabel); // MORNING/AFTERNOON/EVENING
-            Object slot = valueOf.invoke(null, norm);
-            Method from = TourEntry.class.getMethod("from", long.class, long.class, slotClass);
-            Object obj = from.invoke(null, startAt, endAt, slot);
-            if (obj instanceof TourEntry) return (TourEntry) obj;
-        } catch (Throwable ignored) {
-            // 2) Reclasser via TourClassifier si dispo, avec from(long,long, X)
-            try {
-                Method classify = TourClassifier.class.getMethod("classify", long.class, long.class);
-                Object slot = classify.invoke(null, startAt, endAt);
-                for (Method m : TourEntry.class.getMethods()) {
-                    if (!m.getName().equals("from")) continue;
-                    Class<?>[] ps = m.getParameterTypes();
-                    if (ps.length == 3 && ps[0] == long.class && ps[1] == long.class && ps[2].isInstance(slot)) {
-                        Object obj = m.invoke(null, startAt, endAt, slot);
-                        if (obj instanceof TourEntry) return (TourEntry) obj;
-                    }
+            HistoryDb db = db(ctx);
+            HistoryArchive archive = HistoryArchive.get(ctx);
+            if (archive.sealedYears().length > 0) {
+                boolean[] archived = new boolean[startAt.length];
+                int n = 0;
+                for (int i = 0; i < startAt.length; i++) {
+                    archived[i] = archive.contains(startAt[i], endAt[i]);
+                    if (!archived[i]) n++;
                 }
-            } catch (Throwable ignored2) {
-                // 3) Dernier recours : constructeur (long,long,String) si présent
-                try {
-                    return TourEntry.class
-                            .getConstructor(long.class, long.class, String.class)
-                            .newInstance(startAt, endAt, safeLabel(slotLabel));
-                } catch (Throwable ignored3) {
-                    Log.w(TAG, "toTourEntry: fallback échoué, impossible de construire TourEntry.");
+                if (n < startAt.length) {
+                    long[] s = new long[n];
+                    long[] e = new long[n];
+                    String[] l = (slotLabels != null) ? new String[n] : null;
+                    for (int i = 0, j = 0; i < startAt.length; i++) {
+                        if (archived[i]) continue;
+                        s[j] = startAt[i];
+                        e[j] = endAt[i];
+                        if (l != null) l[j] = slotLabels[i];
+                        j++;
+                    }
+                    startAt = s;
+                    endAt = e;
+                    slotLabels = l;
                 }
             }
+            db.insertAll(startAt, endAt, slotLabels);
+            HistoryRepository.get(ctx).onAdded(startAt, endAt);
+            Log.d(TAG, "addAll: OK (" + startAt.length + ")");
+            return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "addAll failed: " + t.getMessage(), t);
+            return false;
         }
-        return null;
     }
 
-    // ==== Lecture/Écriture RAW (JSON) ====
-    private static List<RawEntry> loadAllRaw(Context ctx) {
-        LinkedHashMap<String, RawEntry> merged = new LinkedHashMap<>();
-        putAll(merged, readRaw(ctx, PRIMARY_FILE));
-        for (String name : LEGACY_FILES) putAll(merged, readRaw(ctx, name));
-        return new ArrayList<>(merged.values());
+    // ==== Requêtes (index SQLite + segments archivés) ====
+
+    /** Reçoit les tours un par un (export, agrégats…) sans exposer le format de stockage. */
+    public interface Visitor {
+        void visit(long startAt, long endAt, String slotLabel) throws Exception;
     }
 
-    private static void putAll(LinkedHashMap<String, RawEntry> dst, List<RawEntry> src) {
-        if (src == null) return;
-        for (RawEntry r : src) dst.put(keyOf(r), r);
+    /** Parcourt les tours dont le début est dans [fromMs, toMs[, triés par début. */
+    public static void forEachInRange(Context ctx, long fromMs, long toMs, Visitor visitor) throws Exception {
+        scan(ctx, fromMs, toMs, Long.MIN_VALUE, Long.MIN_VALUE, null, 0, visitor);
     }
 
-    private static String keyOf(RawEntry r) { return r.startAt + "_" + r.endAt; }
+    /** Idem, limité à un créneau (ex. les soirs du mois dernier). */
+    public static void forEachInRange(Context ctx, long fromMs, long toMs, TourClassifier.Period period,
+                                      Visitor visitor) throws Exception {
+        scan(ctx, fromMs, toMs, Long.MIN_VALUE, Long.MIN_VALUE, period, 0, visitor);
+    }
 
-    private static List<RawEntry> readRaw(Context ctx, String fileName) {
-        File f = new File(ctx.getFilesDir(), fileName);
-        if (!f.exists()) return new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            Type t = new TypeToken<List<RawEntry>>(){}.getType();
-            List<RawEntry> list = gson.fromJson(br, t);
-            return (list != null) ? list : new ArrayList<>();
-        } catch (Throwable e) {
-            Log.e(TAG, "readRaw(" + fileName + ") failed: " + e.getMessage(), e);
-            return new ArrayList<>();
+    // ==== Cumuls d'heures (table rollups, lecture par clé) ====
+
+    public static HourRollups.Totals totalsForDay(Context ctx, LocalDate day) throws IOException {
+        return db(ctx).totals(HourRollups.KIND_DAY, HourRollups.bucket(HourRollups.KIND_DAY, day));
+    }
+
+    /** Semaine ISO contenant {@code anyDay}. */
+    public static HourRollups.Totals totalsForWeek(Context ctx, LocalDate anyDay) throws IOException {
+        return db(ctx).totals(HourRollups.KIND_WEEK, HourRollups.bucket(HourRollups.KIND_WEEK, anyDay));
+    }
+
+    public static HourRollups.Totals totalsForMonth(Context ctx, YearMonth month) throws IOException {
+        return db(ctx).totals(HourRollups.KIND_MONTH, HourRollups.monthBucket(month));
+    }
+
+    /** Recalcule les cumuls depuis l'historique brut, archive comprise (après restauration, changement de fuseau…). */
+    public static void rebuildRollups(Context ctx) throws Exception {
+        long t0 = System.nanoTime();
+        HistoryDb db = db(ctx);
+        synchronized (db) { // verrou d'insertAll : pas d'ajout entre la lecture et la réécriture
+            TourTable.Builder b = new TourTable.Builder();
+            forEachInRange(ctx, Long.MIN_VALUE, Long.MAX_VALUE, (startAt, endAt, label) -> b.add(startAt, endAt));
+            db.rebuildRollups(b.build());
         }
+        Log.d(TAG, "rebuildRollups: OK in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
     }
 
-    private static void writeRaw(Context ctx, List<RawEntry> list) {
-        File f = new File(ctx.getFilesDir(), PRIMARY_FILE);
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(f, false))) {
-            gson.toJson(list, bw);
-        } catch (Throwable e) {
-            Log.e(TAG, "writeRaw failed: " + e.getMessage(), e);
+    /**
+     * Retraite l'historique après un changement de règles de créneau (ShiftRules.load) : colonne period
+     * de la base, segments des années scellées concernés, puis cumuls.
+     */
+    public static void reclassify(Context ctx) throws Exception {
+        long t0 = System.nanoTime();
+        int n = db(ctx).reclassify() + HistoryArchive.get(ctx).reclassify();
+        rebuildRollups(ctx);
+        Log.d(TAG, "reclassify: " + n + " tour(s) in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+    }
+
+    // ==== Archive des années passées (HistoryArchive) ====
+
+    /**
+     * Scelle les années antérieures à l'année en cours encore en base : tours déplacés dans un segment
+     * binaire en lecture seule, puis base compactée. Appelé par le job d'inactivité (NextWeekPrewarmJob).
+     * Retourne le nombre de tours archivés.
+     */
+    public static int sealPastYears(Context ctx) throws Exception {
+        HistoryDb db = db(ctx);
+        HistoryArchive archive = HistoryArchive.get(ctx);
+        ZoneId zone = ZoneId.systemDefault();
+        int current = LocalDate.now(zone).getYear();
+        long first = db.firstStart();
+        if (first == Long.MAX_VALUE) return 0;
+
+        int moved = 0;
+        for (int year = Instant.ofEpochMilli(first).atZone(zone).getYear(); year < current; year++) {
+            // tours arrivés après coup dans une année déjà scellée : ils restent en base (fusionnés à la lecture)
+            if (archive.isSealed(year)) continue;
+            int n = db.moveToArchive(year, yearStart(year, zone), yearStart(year + 1, zone), archive);
+            Log.d(TAG, "sealPastYears: " + year + " → " + n + " tour(s)");
+            moved += n;
+        }
+        if (moved > 0) db.vacuum();
+        return moved;
+    }
+
+    /**
+     * Parcours fusionné base + archive, trié par (startAt, endAt) : tours dont le début est dans [fromMs, toMs[,
+     * strictement après (afterStart, afterEnd), d'un créneau (null = tous), au plus {@code limit} (0 = sans limite).
+     * Hors années scellées : une seule requête SQLite. Année scellée : segment lu par semaine, fusionné
+     * avec les (rares) tours arrivés en base après le scellement.
+     * Le libellé d'un tour archivé est celui de son créneau (le libellé d'origine n'est pas conservé).
+     */
+    private static int scan(Context ctx, long fromMs, long toMs, long afterStart, long afterEnd,
+                            TourClassifier.Period period, int limit, Visitor visitor) throws Exception {
+        HistoryDb db = db(ctx);
+        HistoryArchive archive = HistoryArchive.get(ctx);
+        ZoneId zone = ZoneId.systemDefault();
+        int sent = 0;
+        long t = fromMs;
+        for (int year : archive.sealedYears()) {
+            long ys = yearStart(year, zone);
+            long ye = yearStart(year + 1, zone);
+            if (ye <= t || ys >= toMs) continue;
+            if (t < ys) {
+                sent += db.scan(t, ys, afterStart, afterEnd, period, remaining(limit, sent), visitor);
+                if (limit > 0 && sent >= limit) return sent;
+            }
+            long from = Math.max(t, ys);
+            long to = Math.min(ye, toMs);
+            List<RawEntry> late = new ArrayList<>();
+            db.scan(from, to, afterStart, afterEnd, period, 0,
+                    (startAt, endAt, label) -> late.add(new RawEntry(startAt, endAt, label)));
+            YearMerge m = new YearMerge(late, visitor, remaining(limit, sent));
+            archive.forEach(year, from, to, afterStart, afterEnd, period, m);
+            m.drain();
+            sent += m.sent;
+            if (limit > 0 && sent >= limit) return sent;
+            t = to;
+        }
+        if (t < toMs) sent += db.scan(t, toMs, afterStart, afterEnd, period, remaining(limit, sent), visitor);
+        return sent;
+    }
+
+    private static int remaining(int limit, int sent) {
+        return (limit > 0) ? limit - sent : 0;
+    }
+
+    private static long yearStart(int year, ZoneId zone) {
+        return LocalDate.of(year, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /** Fusion triée segment (flux) + tours en base de la même année (liste triée) ; doublon → version archivée. */
+    private static final class YearMerge implements HistoryArchive.Sink {
+        private final List<RawEntry> late;
+        private final Visitor visitor;
+        private final int limit;
+        private int next;
+        int sent;
+
+        YearMerge(List<RawEntry> late, Visitor visitor, int limit) {
+            this.late = late;
+            this.visitor = visitor;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean accept(long startAt, long endAt, TourClassifier.Period p) throws Exception {
+            while (next < late.size()) {
+                RawEntry r = late.get(next);
+                if (r.startAt > startAt || (r.startAt == startAt && r.endAt > endAt)) break;
+                next++;
+                if (r.startAt == startAt && r.endAt == endAt) continue;
+                if (!emit(r.startAt, r.endAt, r.slotLabel)) return false;
+            }
+            return emit(startAt, endAt, TourClassifier.periodLabel(p));
+        }
+
+        void drain() throws Exception {
+            while (next < late.size() && (limit == 0 || sent < limit)) {
+                RawEntry r = late.get(next++);
+                emit(r.startAt, r.endAt, r.slotLabel);
+            }
+        }
+
+        private boolean emit(long startAt, long endAt, String label) throws Exception {
+            if (limit > 0 && sent >= limit) return false;
+            visitor.visit(startAt, endAt, label);
+            sent++;
+            return limit == 0 || sent < limit;
+        }
+    }
+
+    /** Lecture d'au plus {@code limit} tours triés, strictement après (afterStart, afterEnd) : scan() pour query(). */
+    interface ChunkReader {
+        void read(long afterStart, long afterEnd, int limit, Visitor visitor) throws Exception;
+    }
+
+    /** Itérateur de query() : une tranche (TourTable) en mémoire, la suivante lue après la dernière clé rendue. */
+    static final class RangeIterator implements Iterator<TourEntry> {
+        private final ChunkReader reader;
+        private final int chunkSize;
+        private TourTable chunk;
+        private int pos;
+        private boolean last; // la tranche courante est la dernière
+
+        RangeIterator(ChunkReader reader, int chunkSize) throws Exception {
+            this.reader = reader;
+            this.chunkSize = chunkSize;
+            fetch(Long.MIN_VALUE, Long.MIN_VALUE); // première tranche tout de suite : erreur remontée à l'appelant
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pos < chunk.size()) return true;
+            if (last) return false;
+            try {
+                fetch(chunk.startAt(chunk.size() - 1), chunk.endAt(chunk.size() - 1));
+            } catch (Exception e) {
+                throw new IllegalStateException("query: lecture impossible", e);
+            }
+            return pos < chunk.size();
+        }
+
+        @Override
+        public TourEntry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            TourEntry e = TourEntry.from(chunk.startAt(pos), chunk.endAt(pos), chunk.period(pos));
+            pos++;
+            return e;
+        }
+
+        private void fetch(long afterStart, long afterEnd) throws Exception {
+            TourTable.Builder b = new TourTable.Builder(chunkSize);
+            reader.read(afterStart, afterEnd, chunkSize, (startAt, endAt, label) -> b.add(startAt, endAt));
+            chunk = b.build();
+            pos = 0;
+            last = chunk.size() < chunkSize;
         }
     }
 
-    // ==== Utils ====
-    private static String toEnumName(@Nullable String label) {
-        String s = safeLabel(label).toLowerCase(Locale.ROOT).trim();
-        if (s.startsWith("matin")) return "MORNING";
-        if (s.startsWith("ap") || s.contains("midi")) return "AFTERNOON";
-        if (s.startsWith("soir")) return "EVENING";
-        return "AFTERNOON";
+    // ==== Conversion Raw -> TourEntry ====
+    // Appel direct, sans réflexion ni exception : le créneau est recalculé par TourClassifier
+    // (comme le faisait l'ancien repli), le libellé stocké n'est pas relu.
+    static TourEntry toTourEntry(long startAt, long endAt) {
+        return TourEntry.from(startAt, endAt, TourClassifier.classify(startAt, endAt));
+    }
+
+    // ==== Migration ====
+
+    /** Base, après import unique des anciens stockages s'il en reste. */
+    private static HistoryDb db(Context ctx) throws IOException {
+        HistoryDb db = HistoryDb.get(ctx);
+        if (!legacyChecked) {
+            synchronized (HistoryStore.class) {
+                if (!legacyChecked) {
+                    importLegacy(ctx, db);
+                    legacyChecked = true;
+                }
+            }
+        }
+        return db;
+    }
+
+    /**
+     * Insère dans la base le journal history.log, les fichiers JSON et le blob Prefs.KEY_HISTORY_JSON,
+     * puis les retire. Rejouable : un crash avant le renommage ne fait que ré-insérer les mêmes clés.
+     * Fichiers : renommés (.imported), jamais supprimés. Blob : seule copie → effacé uniquement si son
+     * décodage est allé au bout sans erreur ; sinon il reste en place et sera relu au prochain démarrage.
+     */
+    private static void importLegacy(Context ctx, HistoryDb db) throws IOException {
+        List<String> names = new ArrayList<>();
+        names.add(PRIMARY_FILE);
+        Collections.addAll(names, LEGACY_FILES);
+
+        LinkedHashMap<String, RawEntry> merged = new LinkedHashMap<>();
+        List<File> found = new ArrayList<>();
+        HistoryLog log = HistoryLog.get(ctx);
+        if (log.exists()) {
+            found.add(log.file());
+            for (HistoryLog.Record r : log.readAll()) {
+                merged.put(r.startAt + "_" + r.endAt, new RawEntry(r.startAt, r.endAt, r.slotLabel));
+            }
+        }
+        for (String name : names) {
+            File f = new File(ctx.getFilesDir(), name);
+            if (!f.exists()) continue;
+            found.add(f);
+            try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+                readJson(br, merged, name);
+            }
+        }
+        String blob = Prefs.getHistoryJson(ctx);
+        boolean hasBlob = blob != null && !blob.trim().isEmpty() && !blob.trim().equals("[]");
+        boolean blobComplete = hasBlob && readJson(new StringReader(blob), merged, Prefs.KEY_HISTORY_JSON);
+        if (found.isEmpty() && !hasBlob) return;
+
+        int n = merged.size();
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        String[] labels = new String[n];
+        int i = 0;
+        for (RawEntry r : merged.values()) {
+            starts[i] = r.startAt;
+            ends[i] = r.endAt;
+            labels[i] = r.slotLabel;
+            i++;
+        }
+        if (n > 0) db.insertAll(starts, ends, labels);
+        for (File f : found) {
+            File done = new File(f.getParentFile(), f.getName() + IMPORTED_SUFFIX);
+            if (!f.renameTo(done)) Log.w(TAG, "importLegacy: rename failed for " + f.getName());
+        }
+        if (blobComplete) {
+            Prefs.clearHistoryJson(ctx);
+        } else if (hasBlob) {
+            Log.w(TAG, "importLegacy: " + Prefs.KEY_HISTORY_JSON + " partially decoded, kept for a later retry");
+        }
+        Log.d(TAG, "importLegacy: " + n + " tour(s) from " + found.size() + " file(s)" + (hasBlob ? " + prefs" : ""));
     }
 
-    private static String safeLabel(@Nullable String s) {
-        return (s == null) ? "" : s.trim();
+    /**
+     * Décodage en flux ; un fichier illisible est journalisé, ce qui a été lu avant l'erreur est gardé.
+     * Retourne true si tout le contenu a été décodé sans erreur.
+     */
+    private static boolean readJson(Reader in, LinkedHashMap<String, RawEntry> dst, String source) {
+        try {
+            HistoryJsonCodec.read(in, (startAt, endAt, label) -> {
+                dst.put(startAt + "_" + endAt, new RawEntry(startAt, endAt, label));
+                return true;
+            });
+            return true;
+        } catch (Throwable e) {
+            Log.e(TAG, "readJson(" + source + ") failed: " + e.getMessage(), e);
+            return false;
+        }
     }
 
-    // ==== DTO JSON interne ====
+    // ==== DTO interne ====
     private static final class RawEntry {
         long startAt;
         long endAt;
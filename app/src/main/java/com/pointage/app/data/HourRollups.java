@@ -0,0 +1,136 @@
+package com.pointage.app.data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cumuls de minutes par jour, semaine ISO et mois, ventilés par créneau (TourClassifier.Period).
+ * - Persistés dans la table rollups de history.db (une ligne par seau × créneau, 3 × 3 lignes par jour travaillé au plus)
+ * - Tenus à jour par HistoryDb.insertAll dans la même transaction que le tour
+ * - Reconstruction complète : agrégation en parallèle par tranches de la TourTable, puis fusion
+ * Clés de seau : jour = yyyyMMdd, semaine = année ISO * 100 + semaine, mois = yyyyMM.
+ */
+public final class HourRollups {
+
+    static final int KIND_DAY = 1;
+    static final int KIND_WEEK = 2;
+    static final int KIND_MONTH = 3;
+    static final int[] KINDS = { KIND_DAY, KIND_WEEK, KIND_MONTH };
+
+    private static final int PERIOD_COUNT = TourClassifier.Period.values().length;
+    private static final int MIN_CHUNK = 2_048; // en dessous, une tranche par thread ne vaut pas le coût
+
+    private HourRollups() {}
+
+    /** Minutes d'un seau, par créneau ; lecture seule. */
+    public static final class Totals {
+        public static final Totals ZERO = new Totals(new long[PERIOD_COUNT]);
+
+        private final long[] byPeriod;
+
+        Totals(long[] byPeriod) {
+            this.byPeriod = byPeriod;
+        }
+
+        public long minutes() {
+            long total = 0L;
+            for (long m : byPeriod) total += m;
+            return total;
+        }
+
+        public long minutes(TourClassifier.Period p) {
+            return byPeriod[p.ordinal()];
+        }
+
+        /** Heures décimales arrondies au centième (comme la colonne G du modèle). */
+        public double hours() {
+            return Math.round(minutes() / 60d * 100d) / 100d;
+        }
+    }
+
+    // ------------------- Clés -------------------
+
+    static long bucket(int kind, long epochMs, ZoneId zone) {
+        LocalDate d = Instant.ofEpochMilli(epochMs).atZone(zone).toLocalDate();
+        return bucket(kind, d);
+    }
+
+    static long bucket(int kind, LocalDate d) {
+        switch (kind) {
+            case KIND_DAY:   return d.getYear() * 10_000L + d.getMonthValue() * 100L + d.getDayOfMonth();
+            case KIND_WEEK:  return d.get(IsoFields.WEEK_BASED_YEAR) * 100L + d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case KIND_MONTH: return d.getYear() * 100L + d.getMonthValue();
+            default: throw new IllegalArgumentException("kind=" + kind);
+        }
+    }
+
+    static long monthBucket(YearMonth m) {
+        return m.getYear() * 100L + m.getMonthValue();
+    }
+
+    /** Clé composite en mémoire : (kind, seau, créneau). */
+    static long key(int kind, long bucket, int period) {
+        return (((long) kind) << 56) | (bucket << 4) | period;
+    }
+
+    static int kindOf(long key) { return (int) (key >>> 56); }
+    static long bucketOf(long key) { return (key & 0x00FF_FFFF_FFFF_FFFFL) >>> 4; }
+    static int periodOf(long key) { return (int) (key & 0xF); }
+
+    static long minutesOf(long startAt, long endAt) {
+        return Math.max(0L, (endAt - startAt) / 60000L);
+    }
+
+    // ------------------- Reconstruction -------------------
+
+    /** Agrège toute la table (clé composite → minutes), en parallèle par tranches si elle est grande. */
+    static Map<Long, Long> aggregate(TourTable table) throws Exception {
+        int n = table.size();
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), n / MIN_CHUNK));
+        if (threads == 1) return aggregate(table, 0, n);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rollup-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            int chunk = (n + threads - 1) / threads;
+            List<Future<Map<Long, Long>>> parts = new ArrayList<>(threads);
+            for (int from = 0; from < n; from += chunk) {
+                final int f = from;
+                final int t = Math.min(n, from + chunk);
+                parts.add(pool.submit(() -> aggregate(table, f, t)));
+            }
+            Map<Long, Long> merged = new HashMap<>();
+            for (Future<Map<Long, Long>> part : parts) {
+                for (Map.Entry<Long, Long> e : part.get().entrySet()) merged.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+            return merged;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Map<Long, Long> aggregate(TourTable table, int from, int to) {
+        ZoneId zone = ZoneId.systemDefault();
+        Map<Long, Long> out = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            long minutes = minutesOf(table.startAt(i), table.endAt(i));
+            int period = table.period(i).ordinal();
+            LocalDate d = Instant.ofEpochMilli(table.startAt(i)).atZone(zone).toLocalDate();
+            for (int kind : KINDS) out.merge(key(kind, bucket(kind, d), period), minutes, Long::sum);
+        }
+        return out;
+    }
+}
@@ -8,6 +8,10 @@ public final class Prefs {
     public static final String KEY_USER_NAME = "user_name";
     public static final String KEY_START_AT = "start_at";
     public static final String KEY_HISTORY_JSON = "history_json"; // JSONArray string
+    public static final String KEY_TEMPLATE_HASH = "template_hash"; // SHA-1 du modèle validé
+    public static final String KEY_WEEK_MONDAY = "week_monday";           // yyyy-MM-dd du fichier courant
+    public static final String KEY_NEXT_WEEK_MONDAY = "next_week_monday"; // yyyy-MM-dd du fichier préparé
+    public static final String KEY_SHIFT_RULES = "shift_rules";           // bornes appliquées à l'historique (ShiftRules)
 
     private Prefs() {}
 
@@ -42,4 +46,41 @@ public final class Prefs {
     public static String getHistoryJson(Context ctx) {
         return sp(ctx).getString(KEY_HISTORY_JSON, "[]");
     }
+
+    public static void clearHistoryJson(Context ctx) {
+        sp(ctx).edit().remove(KEY_HISTORY_JSON).apply();
+    }
+
+    public static void setTemplateHash(Context ctx, String sha1) {
+        sp(ctx).edit().putString(KEY_TEMPLATE_HASH, sha1).apply();
+    }
+
+    public static String getTemplateHash(Context ctx) {
+        return sp(ctx).getString(KEY_TEMPLATE_HASH, "");
+    }
+
+    // commit() (synchrone) : ces deux clés décrivent des renames déjà faits sur disque
+    public static void setWeekMonday(Context ctx, String isoDate) {
+        sp(ctx).edit().putString(KEY_WEEK_MONDAY, isoDate).commit();
+    }
+
+    public static String getWeekMonday(Context ctx) {
+        return sp(ctx).getString(KEY_WEEK_MONDAY, "");
+    }
+
+    public static void setNextWeekMonday(Context ctx, String isoDate) {
+        sp(ctx).edit().putString(KEY_NEXT_WEEK_MONDAY, isoDate).commit();
+    }
+
+    public static String getNextWeekMonday(Context ctx) {
+        return sp(ctx).getString(KEY_NEXT_WEEK_MONDAY, "");
+    }
+
+    public static void setShiftRules(Context ctx, String signature) {
+        sp(ctx).edit().putString(KEY_SHIFT_RULES, signature).apply();
+    }
+
+    public static String getShiftRules(Context ctx) {
+        return sp(ctx).getString(KEY_SHIFT_RULES, "");
+    }
 }
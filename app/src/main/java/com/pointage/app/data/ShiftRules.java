@@ -0,0 +1,205 @@
+package com.pointage.app.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Règles de créneau (matin / après-midi / soir) : source unique pour l'historique et les classeurs.
+ * - Bornes lues dans shift_rules.properties (files/ puis assets/), défaut 06:00 / 13:45 / 15:30 / 21:45
+ * - Tables précalculées minute du jour → bits (début ≥ borne, fin ≤ borne) : classify = 2 lectures de tableau
+ * - Heure locale via le décalage du fuseau, gardé en cache jusqu'à la prochaine transition (heure d'été) :
+ *   aucune allocation par appel
+ * Matin : début ≥ morning.start ET fin ≤ morning.end ; Soir : début ≥ evening.start ET fin ≤ evening.end ;
+ * sinon Après-midi (y compris un tour qui passe minuit).
+ */
+public final class ShiftRules {
+
+    private static final String TAG = "ShiftRules";
+    static final String CONFIG_FILE = "shift_rules.properties";
+
+    private static final int DAY_MIN = 24 * 60;
+    private static final long MIN_MS = 60_000L;
+    private static final long DAY_MS = DAY_MIN * MIN_MS;
+
+    private static final int MORNING = 1;
+    private static final int EVENING = 2;
+    // masque (début & fin) → créneau ; matin prioritaire si les deux fenêtres se chevauchent
+    private static final TourClassifier.Period[] BY_MASK = {
+            TourClassifier.Period.AFTERNOON, TourClassifier.Period.MORNING,
+            TourClassifier.Period.EVENING, TourClassifier.Period.MORNING
+    };
+
+    private static final ShiftRules DEFAULT = new ShiftRules(6 * 60, 13 * 60 + 45, 15 * 60 + 30, 21 * 60 + 45);
+
+    private static volatile ShiftRules current = DEFAULT;
+    private static volatile ZoneWindow zone; // null = à recalculer
+
+    private final int morningStart;
+    private final int morningEnd;
+    private final int eveningStart;
+    private final int eveningEnd;
+    private final byte[] startBits = new byte[DAY_MIN + 1]; // minute de début (arrondie en dessous)
+    private final byte[] endBits = new byte[DAY_MIN + 1];   // minute de fin (arrondie au-dessus, 24:00 compris)
+
+    private ShiftRules(int morningStart, int morningEnd, int eveningStart, int eveningEnd) {
+        this.morningStart = morningStart;
+        this.morningEnd = morningEnd;
+        this.eveningStart = eveningStart;
+        this.eveningEnd = eveningEnd;
+        for (int m = 0; m <= DAY_MIN; m++) {
+            startBits[m] = (byte) ((m >= morningStart ? MORNING : 0) | (m >= eveningStart ? EVENING : 0));
+            endBits[m] = (byte) ((m <= morningEnd ? MORNING : 0) | (m <= eveningEnd ? EVENING : 0));
+        }
+    }
+
+    /** Règles en vigueur (défaut tant que load() n'a pas été appelé). */
+    public static ShiftRules current() {
+        return current;
+    }
+
+    /**
+     * Charge les bornes depuis files/shift_rules.properties, sinon assets/shift_rules.properties
+     * (clés morning.start, morning.end, evening.start, evening.end au format HH:mm).
+     * Config absente ou invalide → règles par défaut. Retourne true si les règles diffèrent de celles déjà
+     * appliquées à l'historique (Prefs) : à reclasser (HistoryStore.reclassify), puis {@link #markApplied}.
+     */
+    public static boolean load(Context ctx) {
+        Properties p = new Properties();
+        File override = new File(ctx.getFilesDir(), CONFIG_FILE);
+        try (InputStream in = override.exists() ? new FileInputStream(override) : ctx.getAssets().open(CONFIG_FILE)) {
+            p.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "load: no " + CONFIG_FILE + ", defaults kept");
+        }
+        ShiftRules r;
+        try {
+            r = new ShiftRules(
+                    minutes(p, "morning.start", DEFAULT.morningStart),
+                    minutes(p, "morning.end", DEFAULT.morningEnd),
+                    minutes(p, "evening.start", DEFAULT.eveningStart),
+                    minutes(p, "evening.end", DEFAULT.eveningEnd));
+            if (r.morningStart >= r.morningEnd || r.eveningStart >= r.eveningEnd) {
+                throw new IllegalArgumentException("bornes inversées : " + r);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "load: invalid " + CONFIG_FILE + " (" + e.getMessage() + "), defaults kept");
+            r = DEFAULT;
+        }
+        current = r;
+        String signature = current.toString();
+        boolean changed = !signature.equals(Prefs.getShiftRules(ctx));
+        Log.d(TAG, "load: " + signature + (changed ? " (changed)" : ""));
+        return changed;
+    }
+
+    /**
+     * Historique reclassé avec les règles en vigueur : signature enregistrée seulement maintenant,
+     * un reclassement interrompu (exception, process tué) est ainsi repris au prochain démarrage.
+     */
+    public static void markApplied(Context ctx) {
+        Prefs.setShiftRules(ctx, current.toString());
+    }
+
+    /** À appeler sur ACTION_TIMEZONE_CHANGED : le décalage en cache n'est plus valable. */
+    public static void onTimeZoneChanged() {
+        zone = null;
+    }
+
+    // ------------------- Classement -------------------
+
+    /** Créneau d'un tour (instants epoch ms), dans le fuseau de l'appareil. Fin ≤ début → Après-midi. */
+    public TourClassifier.Period classify(long startAtMs, long endAtMs) {
+        if (endAtMs <= startAtMs) return TourClassifier.Period.AFTERNOON; // durée nulle, comme classify(LocalTime…)
+        long localStart = startAtMs + offsetMs(startAtMs);
+        long localEnd = endAtMs + offsetMs(endAtMs);
+        long day = Math.floorDiv(localStart, DAY_MS);
+        long endOfDay = localEnd - day * DAY_MS;
+        if (endOfDay < 0 || endOfDay > DAY_MS) return TourClassifier.Period.AFTERNOON; // passe minuit
+        int startMin = (int) ((localStart - day * DAY_MS) / MIN_MS);
+        int endMin = (int) ((endOfDay + MIN_MS - 1) / MIN_MS);
+        return BY_MASK[startBits[startMin] & endBits[endMin]];
+    }
+
+    /** Créneau d'après des heures locales déjà calculées (classeurs, fuseau explicite). Début ≥ fin → Après-midi. */
+    public TourClassifier.Period classify(LocalTime start, LocalTime end) {
+        if (!start.isBefore(end)) return TourClassifier.Period.AFTERNOON; // passe minuit, ou durée nulle
+        int startMin = start.getHour() * 60 + start.getMinute();
+        int endMin = end.getHour() * 60 + end.getMinute() + ((end.getSecond() | end.getNano()) != 0 ? 1 : 0);
+        return BY_MASK[startBits[startMin] & endBits[endMin]];
+    }
+
+    /** Reclassement en bloc (TourClassifier.Period.ordinal() par tour), pour retraiter l'historique. */
+    public byte[] classifyAll(long[] startAt, long[] endAt) {
+        byte[] out = new byte[startAt.length];
+        for (int i = 0; i < startAt.length; i++) out[i] = (byte) classify(startAt[i], endAt[i]).ordinal();
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return hhmm(morningStart) + "-" + hhmm(morningEnd) + "/" + hhmm(eveningStart) + "-" + hhmm(eveningEnd);
+    }
+
+    /** Minutes depuis minuit → "HH:mm" (bornes, cellules E/F, résumés de version). */
+    public static String hhmm(int minutes) {
+        return String.format(Locale.ROOT, "%02d:%02d", minutes / 60, minutes % 60);
+    }
+
+    // ------------------- Interne -------------------
+
+    private static int minutes(Properties p, String key, int def) {
+        String v = p.getProperty(key);
+        if (v == null || v.trim().isEmpty()) return def;
+        LocalTime t = LocalTime.parse(v.trim());
+        return t.getHour() * 60 + t.getMinute();
+    }
+
+
+    private static long offsetMs(long epochMs) {
+        ZoneWindow w = zone;
+        if (w == null || epochMs < w.from || epochMs >= w.to) {
+            w = ZoneWindow.around(epochMs, ZoneId.systemDefault());
+            zone = w;
+        }
+        return w.offsetMs;
+    }
+
+    /** Décalage constant du fuseau sur [from, to[ (entre deux transitions). */
+    private static final class ZoneWindow {
+        final long from;
+        final long to;
+        final long offsetMs;
+
+        private ZoneWindow(long from, long to, long offsetMs) {
+            this.from = from;
+            this.to = to;
+            this.offsetMs = offsetMs;
+        }
+
+        static ZoneWindow around(long epochMs, ZoneId zoneId) {
+            ZoneRules rules = zoneId.getRules();
+            Instant i = Instant.ofEpochMilli(epochMs);
+            ZoneOffset offset = rules.getOffset(i);
+            ZoneOffsetTransition prev = rules.previousTransition(i);
+            ZoneOffsetTransition next = rules.nextTransition(i);
+            // instant pile sur une transition : previousTransition rend la précédente, la fenêtre commence ici
+            long from = (prev == null) ? Long.MIN_VALUE
+                    : prev.getOffsetAfter().equals(offset) ? prev.toEpochSecond() * 1000L : epochMs;
+            long to = (next == null) ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+            return new ZoneWindow(from, to, offset.getTotalSeconds() * 1000L);
+        }
+    }
+}
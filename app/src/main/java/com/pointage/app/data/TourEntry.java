@@ -18,6 +18,11 @@ public class TourEntry {
     public String endStr;    // HH:mm
     public String period;    // "Matin" | "Après-midi" | "Soir"
 
+    // Formateurs immuables et thread-safe : créés une fois, pas à chaque tour décodé (partagés avec TourTable)
+    static final DateTimeFormatter DF_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    static final DateTimeFormatter DF_TIME = DateTimeFormatter.ofPattern("HH:mm");
+    static final DateTimeFormatter DF_WEEKDAY = DateTimeFormatter.ofPattern("EEEE"); // jour complet local
+
     public static TourEntry from(long startAt, long endAt, TourClassifier.Period p) {
         TourEntry e = new TourEntry();
         e.startAt = startAt;
@@ -27,14 +32,10 @@ public class TourEntry {
         ZoneId zone = ZoneId.systemDefault();
         ZonedDateTime zStart = Instant.ofEpochMilli(startAt).atZone(zone);
 
-        DateTimeFormatter dfDate = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter dfTime = DateTimeFormatter.ofPattern("HH:mm");
-        DateTimeFormatter dfWeek = DateTimeFormatter.ofPattern("EEEE"); // jour complet local
-
-        e.date = dfDate.format(zStart);
-        e.weekday = capitalizeFirst(dfWeek.format(zStart));
-        e.startStr = dfTime.format(zStart);
-        e.endStr = dfTime.format(Instant.ofEpochMilli(endAt).atZone(zone));
+        e.date = DF_DATE.format(zStart);
+        e.weekday = capitalizeFirst(DF_WEEKDAY.format(zStart));
+        e.startStr = DF_TIME.format(zStart);
+        e.endStr = DF_TIME.format(Instant.ofEpochMilli(endAt).atZone(zone));
         e.period = TourClassifier.periodLabel(p);
         return e;
     }
@@ -66,13 +67,18 @@ public class TourEntry {
     }
 
     @Override public String toString() {
+        return describe(date, weekday, period, startStr, endStr, durationMin);
+    }
+
+    /** Rendu d'une ligne d'historique (partagé avec TourTable.Cursor). */
+    static String describe(String date, String weekday, String period, String startStr, String endStr, long durationMin) {
         long h = durationMin / 60;
         long m = durationMin % 60;
         String hm = h + "h" + (m < 10 ? ("0" + m) : String.valueOf(m));
         return date + " (" + weekday + ") • " + period + " • " + startStr + "–" + endStr + " • " + hm;
     }
 
-    private static String capitalizeFirst(String s) {
+    static String capitalizeFirst(String s) {
         if (s == null || s.isEmpty()) return s;
         return s.substring(0,1).toUpperCase() + s.substring(1);
     }
@@ -0,0 +1,172 @@
+package com.pointage.app.data;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Table de tours en colonnes primitives (immuable) : long[] débuts, long[] fins, byte[] créneau.
+ * - 17 octets par tour, sans objet par ligne : des années d'historique tiennent en quelques centaines de Ko
+ * - Totaux (minutes, par créneau, par plage) calculés par boucle sur les colonnes, sans allocation
+ * - Textes (date, jour, heures, créneau) produits à la demande par un {@link Cursor} réutilisable
+ */
+public final class TourTable {
+
+    private static final TourClassifier.Period[] PERIODS = TourClassifier.Period.values();
+
+    public static final TourTable EMPTY = new TourTable(new long[0], new long[0], new byte[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+    private final byte[] periods; // TourClassifier.Period.ordinal()
+
+    // Tableaux adoptés tels quels (déjà à la bonne taille, plus modifiés par l'appelant)
+    TourTable(long[] starts, long[] ends, byte[] periods) {
+        this.starts = starts;
+        this.ends = ends;
+        this.periods = periods;
+    }
+
+    public int size() { return starts.length; }
+    public long startAt(int i) { return starts[i]; }
+    public long endAt(int i) { return ends[i]; }
+    public TourClassifier.Period period(int i) { return PERIODS[periods[i]]; }
+
+    public long durationMin(int i) {
+        return Math.max(0L, (ends[i] - starts[i]) / 60000L);
+    }
+
+    /** Somme des durées (minutes). */
+    public long totalMinutes() {
+        long total = 0L;
+        for (int i = 0; i < starts.length; i++) total += Math.max(0L, (ends[i] - starts[i]) / 60000L);
+        return total;
+    }
+
+    /** Somme des durées (minutes) d'un créneau. */
+    public long totalMinutes(TourClassifier.Period p) {
+        byte code = (byte) p.ordinal();
+        long total = 0L;
+        for (int i = 0; i < starts.length; i++) {
+            if (periods[i] == code) total += Math.max(0L, (ends[i] - starts[i]) / 60000L);
+        }
+        return total;
+    }
+
+    /** Somme des durées (minutes) des tours dont le début est dans [fromMs, toMs[. */
+    public long totalMinutes(long fromMs, long toMs) {
+        long total = 0L;
+        for (int i = 0; i < starts.length; i++) {
+            long s = starts[i];
+            if (s >= fromMs && s < toMs) total += Math.max(0L, (ends[i] - s) / 60000L);
+        }
+        return total;
+    }
+
+    /** Curseur sur la table ; un seul objet pour parcourir toutes les lignes. */
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    // ------------------- Curseur -------------------
+
+    /**
+     * Vue "poids mouche" d'une ligne : mêmes accesseurs que TourEntry, calculés à la demande.
+     * Non thread-safe : un curseur par thread.
+     */
+    public static final class Cursor {
+        private final TourTable table;
+        private int row = -1;
+        private ZonedDateTime zStart; // calculé au premier accesseur texte de la ligne
+
+        Cursor(TourTable table) {
+            this.table = table;
+        }
+
+        public Cursor moveTo(int row) {
+            if (row != this.row) {
+                this.row = row;
+                this.zStart = null;
+            }
+            return this;
+        }
+
+        public int position() { return row; }
+        public long startAt() { return table.starts[row]; }
+        public long endAt() { return table.ends[row]; }
+        public long durationMin() { return table.durationMin(row); }
+        public TourClassifier.Period periodCode() { return table.period(row); }
+
+        public String date() { return TourEntry.DF_DATE.format(start()); }
+        public String weekday() { return TourEntry.capitalizeFirst(TourEntry.DF_WEEKDAY.format(start())); }
+        public String startStr() { return TourEntry.DF_TIME.format(start()); }
+        public String endStr() { return TourEntry.DF_TIME.format(Instant.ofEpochMilli(endAt()).atZone(ZoneId.systemDefault())); }
+        public String period() { return TourClassifier.periodLabel(periodCode()); }
+
+        /** Même rendu que TourEntry.toString. */
+        @Override
+        public String toString() {
+            return TourEntry.describe(date(), weekday(), period(), startStr(), endStr(), durationMin());
+        }
+
+        /** Ligne matérialisée (API existantes qui attendent un TourEntry). */
+        public TourEntry toEntry() {
+            return TourEntry.from(startAt(), endAt(), periodCode());
+        }
+
+        private ZonedDateTime start() {
+            if (zStart == null) zStart = Instant.ofEpochMilli(startAt()).atZone(ZoneId.systemDefault());
+            return zStart;
+        }
+    }
+
+    // ------------------- Construction -------------------
+
+    /** Remplissage ligne à ligne, capacité doublée au besoin. */
+    public static final class Builder {
+        private long[] starts;
+        private long[] ends;
+        private byte[] periods;
+        private int size;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int capacity) {
+            int c = Math.max(1, capacity);
+            starts = new long[c];
+            ends = new long[c];
+            periods = new byte[c];
+        }
+
+        /** Créneau calculé par TourClassifier (comme HistoryStore.toTourEntry). */
+        public Builder add(long startAt, long endAt) {
+            return add(startAt, endAt, TourClassifier.classify(startAt, endAt));
+        }
+
+        public Builder add(long startAt, long endAt, TourClassifier.Period p) {
+            if (size == starts.length) {
+                int c = size * 2;
+                starts = Arrays.copyOf(starts, c);
+                ends = Arrays.copyOf(ends, c);
+                periods = Arrays.copyOf(periods, c);
+            }
+            starts[size] = startAt;
+            ends[size] = endAt;
+            periods[size] = (byte) p.ordinal();
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public TourTable build() {
+            if (size == 0) return EMPTY;
+            return new TourTable(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(periods, size));
+        }
+    }
+}
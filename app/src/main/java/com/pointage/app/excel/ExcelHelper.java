@@ -4,52 +4,65 @@ import android.content.Context;
 import android.os.Environment;
 import android.util.Log;
 
+import com.pointage.app.data.Prefs;
+import com.pointage.app.data.ShiftRules;
+import com.pointage.app.data.TourClassifier;
+import com.pointage.app.util.AtomicFiles;
+
 import org.apache.poi.openxml4j.exceptions.OLE2NotOfficeXmlFileException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.openxml4j.util.ZipSecureFile;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.ZipException;
 
 /**
  * Écriture Excel stable, sans modifier la structure du modèle.
  * - Modèle : app/src/main/assets/Fichier_vierge.xlsx (figé)
  * - Fichier semaine : <ExternalFiles>/Documents/Pointage/Pointage_Semaine.xlsx
+ * - Semaine suivante préparée à l'avance (NextWeekPrewarmJob) ; lundi = archivage (D6 figé au lundi) + rename
+ * - Tour rangé dans la semaine de son début : tour tardif d'une semaine close → archive de cette semaine
  * - C4 : Nom & prénom (écrire en C4 uniquement, zone fusionnée dans le modèle)
- * - E/F : Début / Fin (G total se calcule par les formules présentes dans le modèle)
- * - Écriture atomique (.tmp + rename) + petit lock file
+ * - E/F : Début / Fin (G total se calcule par les formules présentes dans le modèle,
+ *   recalcul ciblé via {@link FormulaRecalc})
+ * - Écriture atomique (.tmp + rename) sous {@link WeekFileLock}
  * - Ouverture via OPCPackage pour éviter le ClassCastException sur Android
+ * - Classeur gardé ouvert entre deux écritures par {@link WeeklyWorkbookSession} (ouvert à la première)
+ * - Autres fichiers (préparation, reconstruction) : écrits en streaming par {@link SheetXmlPatcher} (pas de DOM)
+ * - Toutes les écritures passent par {@link WorkbookTransaction} (nom + tours = une sauvegarde)
+ * - Version remplacée gardée par {@link WeekFileVersions} (lien physique ou rename ; restauration = un rename)
  */
 public final class ExcelHelper {
 
     private static final String TAG = "ExcelHelper";
 
     private static final String WEEK_DIR_NAME   = "Pointage";
-    private static final String WEEK_FILE_NAME  = "Pointage_Semaine.xlsx";
-    private static final String ASSET_TEMPLATE  = "Fichier_vierge.xlsx"; // DOIT être dans app/src/main/assets/
-    private static final String LOCK_NAME       = "pointage.lock";
-
-    // Colonnes (0-based): C=2, E=4, F=5
-    private static final int COL_NAME_C4 = 2;
+    static final String WEEK_FILE_NAME          = "Pointage_Semaine.xlsx";
+    private static final String NEXT_WEEK_FILE_NAME = "Pointage_Semaine.next.xlsx";   // préparé à l'avance
+    private static final String STAGING_FILE_NAME   = "Pointage_Semaine.staging.xlsx";
+    private static final String ARCHIVE_PREFIX      = "Pointage_";                    // + lundi + .xlsx
+
+    // Colonnes (0-based): E=4, F=5
+    private static final String REF_NAME_C4 = "C4";
+    // D6 = TODAY() dans le modèle ; C6 (lundi) et les dates B10/B20/B30 en découlent
+    static final String REF_WEEK_DATE_D6 = "D6";
     private static final int COL_START_E = 4;
     private static final int COL_END_F   = 5;
 
@@ -76,26 +89,47 @@ public final class ExcelHelper {
 
     /** Écrit un tour (début/fin) dans E/F selon les règles. Retourne true si OK. */
     public static boolean recordTour(Context ctx, long startAtMs, long endAtMs) {
-        File weekFile = ensureWeekFile(ctx);
-        return writeTourInternal(weekFile, startAtMs, endAtMs, ZoneId.systemDefault());
+        return recordTours(ctx, new long[] { startAtMs }, new long[] { endAtMs });
+    }
+
+    /** Écrit plusieurs tours en UNE seule sauvegarde du classeur. Retourne true si OK. */
+    public static boolean recordTours(Context ctx, long[] startAtMs, long[] endAtMs) {
+        return recordTours(ctx, startAtMs, endAtMs, FormulaRecalc.Mode.TARGETED);
+    }
+
+    /** Sort de chaque tour passé à {@link #recordToursEach}. */
+    public enum TourWrite {
+        OK,       // écrit dans le classeur de sa semaine
+        RETRY,    // échec (fichier, verrou…) : à rejouer
+        REJECTED  // jamais applicable : ne pas rejouer
     }
 
-    /** Ouvre le modèle depuis assets et tente un XSSFWorkbook → true si OK. */
+    /**
+     * Idem + nom en C4, dans la même sauvegarde (userName null → C4 inchangé), avec le sort de CHAQUE tour :
+     * un lot refusé est rejoué tour par tour pour isoler le fautif.
+     */
+    public static TourWrite[] recordToursEach(Context ctx, String userName, long[] startAtMs, long[] endAtMs) {
+        return recordToursByWeek(ctx, userName, startAtMs, endAtMs, FormulaRecalc.Mode.TARGETED);
+    }
+
+    /**
+     * Idem, avec le mode de recalcul des formules G/totaux :
+     * TARGETED (défaut), FULL, ou ON_LOAD si le fichier part seulement vers un viewer.
+     */
+    public static boolean recordTours(Context ctx, long[] startAtMs, long[] endAtMs, FormulaRecalc.Mode recalc) {
+        for (TourWrite w : recordToursByWeek(ctx, null, startAtMs, endAtMs, recalc)) {
+            if (w != TourWrite.OK) return false;
+        }
+        return true;
+    }
+
+    /** Ouvre le modèle depuis assets et tente un XSSFWorkbook → true si OK (résultat mémorisé par empreinte). */
     public static boolean selfTestTemplate(Context ctx) {
         try {
-            File tmp = new File(ctx.getCacheDir(), "model_self_test.xlsx");
-            if (tmp.exists()) //noinspection ResultOfMethodCallIgnored
-                tmp.delete();
-            if (!copyTemplateFromAssets(ctx, tmp)) return false;
-            try (FileInputStream fis = new FileInputStream(tmp);
-                 OPCPackage pkg = OPCPackage.open(fis);
-                 XSSFWorkbook wb = new XSSFWorkbook(pkg)) {
-                Log.d(TAG, "selfTestTemplate: OK — sheets=" + wb.getNumberOfSheets() + " path=" + tmp.getAbsolutePath());
-                return wb.getNumberOfSheets() > 0;
-            } finally {
-                //noinspection ResultOfMethodCallIgnored
-                tmp.delete();
-            }
+            // parse seulement si l'asset a changé depuis la dernière validation
+            boolean ok = TemplateProvider.validate(ctx);
+            Log.d(TAG, "selfTestTemplate: " + (ok ? "OK" : "KO"));
+            return ok;
         } catch (Throwable t) {
             Log.e(TAG, "selfTestTemplate: FAIL " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
             return false;
@@ -104,7 +138,7 @@ public final class ExcelHelper {
 
     // ------------------- Accès fichiers -------------------
 
-    private static File getWeekDir(Context ctx) {
+    static File getWeekDir(Context ctx) {
         File docs = ctx.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
         File dir = new File(docs, WEEK_DIR_NAME);
         if (!dir.exists() && !dir.mkdirs()) {
@@ -113,6 +147,11 @@ public final class ExcelHelper {
         return dir;
     }
 
+    /** Classeur archivé d'une semaine passée : Pointage_<lundi>.xlsx (comme à la bascule du lundi). */
+    static File getArchiveFile(Context ctx, String mondayIso) {
+        return new File(getWeekDir(ctx), ARCHIVE_PREFIX + mondayIso + ".xlsx");
+    }
+
     /** Public si besoin dans d’autres écrans. */
     public static File getWeekFile(Context ctx) {
         File f = new File(getWeekDir(ctx), WEEK_FILE_NAME);
@@ -122,6 +161,9 @@ public final class ExcelHelper {
 
     private static File ensureWeekFile(Context ctx) {
         File f = getWeekFile(ctx);
+        rolloverIfNeeded(ctx, f);
+        // process tué entre la mise de côté de la version courante et le rename du .tmp
+        if (!f.exists()) WeekFileVersions.recover(f);
         if (!f.exists() || f.length() == 0) {
             Log.d(TAG, "ensureWeekFile: copying template → " + f.getAbsolutePath());
             if (!copyTemplateFromAssets(ctx, f)) {
@@ -131,31 +173,174 @@ public final class ExcelHelper {
         return f;
     }
 
-    /** Copie le modèle assets → dest. Retourne true si OK. */
-    private static boolean copyTemplateFromAssets(Context ctx, File dest) {
-        Log.d(TAG, "copyTemplateFromAssets: assets/" + ASSET_TEMPLATE + " → " + dest.getAbsolutePath());
-        try (InputStream in = ctx.getAssets().open(ASSET_TEMPLATE)) {
-            File tmp = new File(dest.getParentFile(), WEEK_FILE_NAME + ".tmp");
-            try (OutputStream out = new FileOutputStream(tmp)) {
-                byte[] buf = new byte[8192];
-                int n;
-                while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+    /**
+     * Changement de semaine : l'ancien fichier est archivé (Pointage_<lundi>.xlsx), puis le fichier
+     * préparé par le job d'inactivité devient le fichier courant par UN rename (bascule atomique).
+     * Rejouable : un crash entre les deux renames est repris au prochain appel.
+     */
+    private static void rolloverIfNeeded(Context ctx, File weekFile) {
+        String thisMonday = WeekCalendar.mondayIso(System.currentTimeMillis());
+        String current = Prefs.getWeekMonday(ctx);
+        if (current.isEmpty()) {
+            // Fichier d'avant la bascule hebdo : adopté tel quel pour la semaine en cours
+            Prefs.setWeekMonday(ctx, thisMonday);
+            return;
+        }
+        if (current.equals(thisMonday)) return;
+
+        try (WeekFileLock ignored = WeekFileLock.acquire(weekFile)) {
+            WeeklyWorkbookSession.get().invalidate();
+            File dir = weekFile.getParentFile();
+            if (!weekFile.exists()) WeekFileVersions.recover(weekFile); // semaine close à archiver, pas à perdre
+            if (weekFile.exists()) {
+                pinWeekDate(weekFile, current);
+                File archive = new File(dir, ARCHIVE_PREFIX + current + ".xlsx");
+                if (archive.exists()) archive = new File(dir, ARCHIVE_PREFIX + current + "_" + System.currentTimeMillis() + ".xlsx");
+                AtomicFiles.replace(weekFile, archive);
+                Log.d(TAG, "rollover: archived → " + archive.getName());
+                WeekFileVersions.clear(weekFile); // générations de la semaine close : l'archive fait foi
+            }
+            File next = new File(dir, NEXT_WEEK_FILE_NAME);
+            if (next.isFile() && thisMonday.equals(Prefs.getNextWeekMonday(ctx))) {
+                AtomicFiles.replace(next, weekFile);
+                Log.d(TAG, "rollover: switched to prepared file for " + thisMonday);
+            } else if (next.exists() && !next.delete()) {
+                Log.w(TAG, "rollover: unable to delete stale " + next.getName());
+            }
+            Prefs.setWeekMonday(ctx, thisMonday);
+            Prefs.setNextWeekMonday(ctx, "");
+        } catch (Throwable t) {
+            Log.e(TAG, "rollover failed: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * D6 (TODAY() dans le modèle) figé au lundi de la semaine : sans cela, un classeur archivé
+     * afficherait les dates de la semaine où on l'ouvre. Un échec n'empêche pas l'archivage.
+     */
+    private static void pinWeekDate(File f, String mondayIso) {
+        try {
+            WorkbookTransaction.on(f).setNumber(REF_WEEK_DATE_D6, excelDate(mondayIso)).commit();
+        } catch (Throwable t) {
+            Log.e(TAG, "pinWeekDate: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+        }
+    }
+
+    /** Date Excel (minuit local) du jour yyyy-MM-dd. */
+    static double excelDate(String isoDay) {
+        long ms = LocalDate.parse(isoDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return DateUtil.getExcelDate(new Date(ms));
+    }
+
+    /**
+     * Classeur archivé de la semaine {@code mondayIso}, créé depuis le modèle (D6 figé, nom en C4) s'il
+     * n'existe pas encore : tour d'une semaine close arrivé après la bascule.
+     */
+    private static File ensureArchiveFile(Context ctx, String mondayIso) throws Exception {
+        File f = getArchiveFile(ctx, mondayIso);
+        try (WeekFileLock ignored = WeekFileLock.acquire(f)) {
+            if (f.isFile() && f.length() > 0) return f;
+            TemplateProvider.copyTo(ctx, f);
+            WorkbookTransaction tx = WorkbookTransaction.on(f).setNumber(REF_WEEK_DATE_D6, excelDate(mondayIso));
+            String name = Prefs.getUserName(ctx);
+            if (name != null && !name.isEmpty()) tx.setString(REF_NAME_C4, name);
+            tx.commit();
+            Log.d(TAG, "ensureArchiveFile: created " + f.getName());
+        }
+        return f;
+    }
+
+    /**
+     * Prépare le fichier de la semaine prochaine (appelé par le job d'inactivité) :
+     * copie du modèle, nom en C4, contrôle d'intégrité, puis publication atomique.
+     * Retourne true si le fichier préparé est prêt (déjà ou maintenant).
+     */
+    public static boolean prepareNextWeek(Context ctx) {
+        String nextMonday = nextMondayIso();
+        File dir = getWeekDir(ctx);
+        File next = new File(dir, NEXT_WEEK_FILE_NAME);
+        if (next.isFile() && nextMonday.equals(Prefs.getNextWeekMonday(ctx))) return true;
+
+        File staging = new File(dir, STAGING_FILE_NAME);
+        try {
+            long t0 = System.nanoTime();
+            TemplateProvider.copyTo(ctx, staging);
+            String name = Prefs.getUserName(ctx);
+            if (name != null && !name.isEmpty()) {
+                WorkbookTransaction.on(staging).setString(REF_NAME_C4, name).commit();
+            }
+            if (!checkIntegrity(staging, name)) {
+                Log.e(TAG, "prepareNextWeek: integrity check FAILED");
+                return false;
+            }
+            try (WeekFileLock ignored = WeekFileLock.acquire(next)) {
+                AtomicFiles.replace(staging, next);
+                Prefs.setNextWeekMonday(ctx, nextMonday);
             }
-            if (dest.exists() && !dest.delete()) Log.w(TAG, "copyTemplateFromAssets: unable to delete old file");
-            if (!tmp.renameTo(dest)) {
-                Log.w(TAG, "copyTemplateFromAssets: renameTo failed, fallback stream copy");
-                try (FileInputStream fis = new FileInputStream(tmp);
-                     FileOutputStream fos = new FileOutputStream(dest)) {
-                    byte[] b = new byte[8192];
-                    int n;
-                    while ((n = fis.read(b)) > 0) fos.write(b, 0, n);
+            Log.d(TAG, "prepareNextWeek: ready for " + nextMonday + " in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+            return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "prepareNextWeek: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+            return false;
+        } finally {
+            if (staging.exists()) //noinspection ResultOfMethodCallIgnored
+                staging.delete();
+        }
+    }
+
+    /** true si le fichier préparé attend déjà la semaine prochaine. */
+    public static boolean isNextWeekPrepared(Context ctx) {
+        String nextMonday = nextMondayIso();
+        return nextMonday.equals(Prefs.getNextWeekMonday(ctx))
+                && new File(getWeekDir(ctx), NEXT_WEEK_FILE_NAME).isFile();
+    }
+
+    /** Ouverture POI en lecture seule : feuille présente, nom en C4, créneaux E/F vides. */
+    private static boolean checkIntegrity(File f, String expectedName) {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(f, PackageAccess.READ);
+            XSSFWorkbook wb = new XSSFWorkbook(pkg);
+            if (wb.getNumberOfSheets() == 0) return false;
+            Sheet sh = wb.getSheetAt(0);
+            if (expectedName != null && !expectedName.isEmpty()) {
+                Row r4 = sh.getRow(3);
+                Cell c4 = (r4 != null) ? r4.getCell(2) : null;
+                if (c4 == null || !expectedName.equals(c4.getStringCellValue())) return false;
+            }
+            for (int base : new int[] { 10, 20, 30 }) {
+                for (int d = 0; d < 7; d++) {
+                    Row r = sh.getRow(base - 1 + d);
+                    if (r == null) continue;
+                    for (int col : new int[] { COL_START_E, COL_END_F }) {
+                        Cell c = r.getCell(col);
+                        if (c != null && c.getCellTypeEnum() != CellType.BLANK) return false;
+                    }
                 }
-                //noinspection ResultOfMethodCallIgnored
-                tmp.delete();
             }
             return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "checkIntegrity: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+            return false;
+        } finally {
+            // lecture seule : revert() (close() tenterait une sauvegarde)
+            if (pkg != null) pkg.revert();
+        }
+    }
+
+    private static String nextMondayIso() {
+        // lundi + 8 jours = mardi suivant : marge sur les jours de 23 h / 25 h
+        return WeekCalendar.mondayIso(WeekCalendar.mondayStartMs(System.currentTimeMillis()) + 8 * 86_400_000L);
+    }
+
+    /** Copie le modèle assets → dest. Retourne true si OK. */
+    private static boolean copyTemplateFromAssets(Context ctx, File dest) {
+        Log.d(TAG, "copyTemplateFromAssets: assets/" + TemplateProvider.ASSET_TEMPLATE + " → " + dest.getAbsolutePath());
+        try {
+            TemplateProvider.copyTo(ctx, dest);
+            return true;
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "Template NOT FOUND in assets/. Place exact file '" + ASSET_TEMPLATE + "' in app/src/main/assets/", e);
+            Log.e(TAG, "Template NOT FOUND in assets/. Place exact file '" + TemplateProvider.ASSET_TEMPLATE + "' in app/src/main/assets/", e);
             return false;
         } catch (IOException e) {
             Log.e(TAG, "copyTemplateFromAssets IO error: " + e.getMessage(), e);
@@ -167,155 +352,119 @@ public final class ExcelHelper {
 
     private static boolean writeUserNameInternal(File weekFile, String userName) {
         if (weekFile == null) { Log.e(TAG, "writeUserNameInternal: weekFile null"); return false; }
-        File lock = new File(weekFile.getParentFile(), LOCK_NAME);
         try {
-            //noinspection ResultOfMethodCallIgnored
-            lock.createNewFile();
-
-            // ⚠️ IMPORTANT : ouverture via OPCPackage + FileInputStream
-            try (FileInputStream fis = new FileInputStream(weekFile);
-                 OPCPackage pkg = OPCPackage.open(fis);
-                 XSSFWorkbook wb = new XSSFWorkbook(pkg)) {
-
-                Sheet sh = wb.getSheetAt(0);
-                Row r4 = getOrCreateRow(sh, 3);              // C4 → row 3 (0-based)
-                Cell c4 = getOrCreateCell(r4, COL_NAME_C4);  // col 2
-                c4.setCellValue(userName != null ? userName : "");
-
-                writeWorkbookAtomically(wb, weekFile);
-                Log.d(TAG, "writeUserNameInternal: OK");
-                return true;
-            }
+            WorkbookTransaction.on(weekFile)
+                    .setString(REF_NAME_C4, userName)
+                    .keepVersion("nom")
+                    .commit();
+            Log.d(TAG, "writeUserNameInternal: OK");
+            return true;
         } catch (ZipException | OLE2NotOfficeXmlFileException ze) {
             Log.e(TAG, "writeUserNameInternal: invalid XLSX (zip): " + ze.getMessage(), ze);
         } catch (Throwable t) {
             Log.e(TAG, "writeUserNameInternal: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
-        } finally {
-            //noinspection ResultOfMethodCallIgnored
-            lock.delete();
         }
         return false;
     }
 
-    private static boolean writeTourInternal(File weekFile, long startAtMs, long endAtMs, ZoneId zone) {
-        if (weekFile == null) { Log.e(TAG, "writeTourInternal: weekFile null"); return false; }
-        File lock = new File(weekFile.getParentFile(), LOCK_NAME);
-        try {
-            //noinspection ResultOfMethodCallIgnored
-            lock.createNewFile();
-
-            // ⚠️ IMPORTANT : ouverture via OPCPackage + FileInputStream
-            try (FileInputStream fis = new FileInputStream(weekFile);
-                 OPCPackage pkg = OPCPackage.open(fis);
-                 XSSFWorkbook wb = new XSSFWorkbook(pkg)) {
-
-                Sheet sh = wb.getSheetAt(0);
-
-                LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(startAtMs), zone);
-                LocalDateTime end   = LocalDateTime.ofInstant(Instant.ofEpochMilli(endAtMs),   zone);
-
-                Slot slot = classify(start.toLocalTime(), end.toLocalTime());
-                int offset = dayOffset(start.toLocalDate());
-
-                // BaseRows (Excel 1-based)
-                int base = (slot == Slot.MORNING) ? 10 : (slot == Slot.EVENING) ? 30 : 20;
-                int rowIndex = (base - 1) + offset; // -> 0-based
-                Row row = getOrCreateRow(sh, rowIndex);
-
-                DataFormat df = wb.createDataFormat();
-                CellStyle timeStyle = wb.createCellStyle();
-                timeStyle.setDataFormat(df.getFormat("HH:mm"));
-
-                Date startDate = toExcelDate(start);
-                Date endDate   = toExcelDate(end);
-
-                Cell cStart = getOrCreateCell(row, COL_START_E);
-                Cell cEnd   = getOrCreateCell(row, COL_END_F);
-
-                cStart.setCellValue(startDate);
-                cStart.setCellStyle(timeStyle);
-
-                cEnd.setCellValue(endDate);
-                cEnd.setCellStyle(timeStyle);
-
-                // recalcul des formules (G auto)
-                XSSFFormulaEvaluator.evaluateAllFormulaCells(wb);
+    /**
+     * Chaque tour va dans le classeur de la semaine de son DÉBUT, pas de celle du drain
+     * (journal rejoué au démarrage, service du dimanche arrêté après minuit) :
+     * - semaine courante → fichier de la semaine ; semaine close → son archive (créée au besoin)
+     * - semaine future (horloge reculée depuis) → REJECTED : aucun classeur ne l'acceptera (l'archive de cette
+     *   semaine serait écrasée à son passage), l'appelant le sort du journal au lieu de le rejouer
+     * - lot d'une semaine refusé → rejoué tour par tour : un tour fautif ne bloque pas les autres
+     */
+    private static TourWrite[] recordToursByWeek(Context ctx, String userName, long[] startAtMs, long[] endAtMs,
+                                                 FormulaRecalc.Mode recalc) {
+        TourWrite[] out = new TourWrite[startAtMs.length];
+        File weekFile = ensureWeekFile(ctx);
+        String current = Prefs.getWeekMonday(ctx);
 
-                writeWorkbookAtomically(wb, weekFile);
-                Log.d(TAG, "writeTourInternal: OK row=" + (rowIndex + 1) + " slot=" + slot);
-                return true;
+        // lundis yyyy-MM-dd : l'ordre lexical est l'ordre chronologique
+        TreeMap<String, List<Integer>> byWeek = new TreeMap<>();
+        for (int i = 0; i < startAtMs.length; i++) {
+            byWeek.computeIfAbsent(WeekCalendar.mondayIso(startAtMs[i]), k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> e : byWeek.entrySet()) {
+            String monday = e.getKey();
+            List<Integer> idx = e.getValue();
+            int cmp = monday.compareTo(current);
+            if (cmp == 0) {
+                writeWeek(weekFile, userName, startAtMs, endAtMs, idx, recalc, out);
+            } else if (cmp < 0) {
+                Log.d(TAG, "recordTours: " + idx.size() + " tour(s) of closed week " + monday + " → archive");
+                File archive;
+                try {
+                    archive = ensureArchiveFile(ctx, monday);
+                } catch (Throwable t) {
+                    Log.e(TAG, "recordTours: archive " + monday + ": " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+                    for (int i : idx) out[i] = TourWrite.RETRY;
+                    continue;
+                }
+                writeWeek(archive, null, startAtMs, endAtMs, idx, recalc, out);
+            } else {
+                Log.e(TAG, "recordTours: " + idx.size() + " tour(s) in future week " + monday
+                        + " (current " + current + ") rejected");
+                for (int i : idx) out[i] = TourWrite.REJECTED;
             }
-        } catch (ZipException | OLE2NotOfficeXmlFileException ze) {
-            Log.e(TAG, "writeTourInternal: invalid XLSX (zip): " + ze.getMessage(), ze);
-        } catch (Throwable t) {
-            Log.e(TAG, "writeTourInternal: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
-        } finally {
-            //noinspection ResultOfMethodCallIgnored
-            lock.delete();
         }
-        return false;
+        return out;
     }
 
-    private static void writeWorkbookAtomically(XSSFWorkbook wb, File weekFile) throws IOException {
-        File tmp = new File(weekFile.getParentFile(), WEEK_FILE_NAME + ".tmp");
-        try (FileOutputStream fos = new FileOutputStream(tmp)) {
-            wb.write(fos);
+    /** Tours {@code idx} d'une même semaine : une transaction, puis tour par tour si elle échoue. */
+    private static void writeWeek(File file, String userName, long[] startAtMs, long[] endAtMs, List<Integer> idx,
+                                  FormulaRecalc.Mode recalc, TourWrite[] out) {
+        long[] starts = new long[idx.size()];
+        long[] ends = new long[idx.size()];
+        for (int k = 0; k < starts.length; k++) {
+            starts[k] = startAtMs[idx.get(k)];
+            ends[k] = endAtMs[idx.get(k)];
         }
-        if (weekFile.exists() && !weekFile.delete()) {
-            Log.w(TAG, "writeWorkbookAtomically: old file delete failed");
+        if (writeTourInternal(file, userName, starts, ends, recalc)) {
+            for (int i : idx) out[i] = TourWrite.OK;
+            return;
         }
-        if (!tmp.renameTo(weekFile)) {
-            Log.w(TAG, "writeWorkbookAtomically: renameTo failed, fallback copy");
-            try (FileInputStream fis = new FileInputStream(tmp);
-                 FileOutputStream fos = new FileOutputStream(weekFile)) {
-                byte[] b = new byte[8192];
-                int n;
-                while ((n = fis.read(b)) > 0) fos.write(b, 0, n);
-            }
-            //noinspection ResultOfMethodCallIgnored
-            tmp.delete();
+        if (idx.size() == 1) {
+            out[idx.get(0)] = TourWrite.RETRY;
+            return;
+        }
+        Log.w(TAG, "recordTours: batch of " + idx.size() + " refused, retrying tour by tour");
+        for (int i : idx) {
+            boolean ok = writeTourInternal(file, userName, new long[] { startAtMs[i] }, new long[] { endAtMs[i] }, recalc);
+            out[i] = ok ? TourWrite.OK : TourWrite.RETRY;
         }
-        Log.d(TAG, "writeWorkbookAtomically: wrote " + weekFile.getAbsolutePath());
-    }
-
-    // ------------------- Règles & util -------------------
-
-    private enum Slot { MORNING, AFTERNOON, EVENING }
-
-    // Matin : start ≥ 06:00 ET end ≤ 13:45
-    // Soir  : start ≥ 15:30 ET end ≤ 21:45
-    // Sinon : Après-midi
-    private static Slot classify(LocalTime start, LocalTime end) {
-        LocalTime MORNING_START = LocalTime.of(6, 0);
-        LocalTime MORNING_END   = LocalTime.of(13, 45);
-        LocalTime EVENING_START = LocalTime.of(15, 30);
-        LocalTime EVENING_END   = LocalTime.of(21, 45);
-
-        boolean isMorning = !start.isBefore(MORNING_START) && !end.isAfter(MORNING_END);
-        boolean isEvening = !start.isBefore(EVENING_START) && !end.isAfter(EVENING_END);
-
-        if (isMorning) return Slot.MORNING;
-        if (isEvening) return Slot.EVENING;
-        return Slot.AFTERNOON;
-    }
-
-    /** Lundi=0 .. Dimanche=6 */
-    private static int dayOffset(LocalDate date) {
-        int dow = date.getDayOfWeek().getValue(); // 1=lundi .. 7=dimanche
-        return dow - 1;
     }
 
-    private static Row getOrCreateRow(Sheet sheet, int rowIndex) {
-        Row r = sheet.getRow(rowIndex);
-        return (r != null) ? r : sheet.createRow(rowIndex);
-    }
+    /** Tours (+ nom en C4 si userName != null) dans UNE transaction : un seul chargement, une seule sauvegarde. */
+    private static boolean writeTourInternal(File weekFile, String userName, long[] startAtMs, long[] endAtMs,
+                                             FormulaRecalc.Mode recalc) {
+        if (weekFile == null) { Log.e(TAG, "writeTourInternal: weekFile null"); return false; }
+        try {
+            WorkbookTransaction tx = WorkbookTransaction.on(weekFile).recalc(recalc);
+            // générations : fichier de la semaine seulement (une archive n'est réécrite qu'exceptionnellement)
+            if (WeeklyWorkbookSession.isSessionFile(weekFile)) tx.keepVersion("tours");
+            if (userName != null) tx.setString(REF_NAME_C4, userName);
+
+            int n = startAtMs.length;
+            for (int i = 0; i < n; i++) {
+                // BaseRows (Excel 1-based) + jour, via le calendrier partagé
+                TourClassifier.Period slot = ShiftRules.current().classify(startAtMs[i], endAtMs[i]);
+                int row1 = WeekCalendar.row(startAtMs[i], slot);
+
+                tx.setTime(CellReference.convertNumToColString(COL_START_E) + row1, new Date(startAtMs[i]));
+                tx.setTime(CellReference.convertNumToColString(COL_END_F) + row1, new Date(endAtMs[i]));
+            }
 
-    private static Cell getOrCreateCell(Row row, int colIndex) {
-        Cell c = row.getCell(colIndex);
-        return (c != null) ? c : row.createCell(colIndex);
+            tx.commit();
+            Log.d(TAG, "writeTourInternal: OK tours=" + n);
+            return true;
+        } catch (ZipException | OLE2NotOfficeXmlFileException ze) {
+            Log.e(TAG, "writeTourInternal: invalid XLSX (zip): " + ze.getMessage(), ze);
+        } catch (Throwable t) {
+            Log.e(TAG, "writeTourInternal: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+        }
+        return false;
     }
 
-    private static Date toExcelDate(LocalDateTime ldt) {
-        return Date.from(ldt.atZone(ZoneId.systemDefault()).toInstant());
-    }
 }
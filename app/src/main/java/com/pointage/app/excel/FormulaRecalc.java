@@ -0,0 +1,285 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recalcul ciblé des formules de la première feuille.
+ * - Graphe de dépendances (cellule → formules qui la lisent) construit UNE fois par modèle
+ *   (clé = empreinte des formules), puis réutilisé pour chaque classeur issu de ce modèle
+ * - Instance (évaluateur) tenue par le propriétaire du classeur (WeeklyWorkbookSession) et jetée avec lui :
+ *   aucun registre statique ne retient le classeur
+ * - TARGETED : seules les formules dépendant (transitivement) des cellules modifiées sont évaluées,
+ *   dans l'ordre des dépendances, avec un évaluateur réutilisé par classeur
+ * - Formules volatiles (TODAY(), NOW()…) et leurs dépendantes (C6, B10/B20/B30…) : toujours réévaluées
+ * - Noms définis (NamePtg) : résolus vers les zones qu'ils désignent
+ * - FULL     : équivalent de XSSFFormulaEvaluator.evaluateAllFormulaCells
+ * - ON_LOAD  : aucune évaluation, flag "recalcul à l'ouverture" (fichier destiné à un viewer)
+ */
+public final class FormulaRecalc {
+
+    private static final String TAG = "FormulaRecalc";
+
+    public enum Mode { TARGETED, FULL, ON_LOAD }
+
+    // OFFSET/INDIRECT : zone lue connue seulement à l'évaluation → traitées comme volatiles
+    private static final Set<String> VOLATILE_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "TODAY", "NOW", "RAND", "RANDBETWEEN", "OFFSET", "INDIRECT"));
+    private static final int MAX_NAME_DEPTH = 8; // noms définis à partir d'autres noms
+
+    private static final Map<String, Plan> PLANS = new ConcurrentHashMap<>();
+
+    private final XSSFWorkbook wb;
+    private final XSSFFormulaEvaluator evaluator;
+    private final Plan plan;
+
+    private FormulaRecalc(XSSFWorkbook wb, Plan plan) {
+        this.wb = wb;
+        this.evaluator = wb.getCreationHelper().createFormulaEvaluator();
+        this.plan = plan;
+    }
+
+    /** Évaluateur + plan pour ce classeur ; à garder à côté de lui, tant qu'il vit. */
+    public static FormulaRecalc create(XSSFWorkbook wb) {
+        return new FormulaRecalc(wb, planFor(wb));
+    }
+
+    /** Recalcule après modification des cellules {@code changed} (feuille 0). */
+    public void recalc(Collection<Cell> changed, Mode mode) {
+        switch (mode) {
+            case ON_LOAD:
+                wb.setForceFormulaRecalculation(true);
+                return;
+            case FULL:
+                evaluator.clearAllCachedResultValues();
+                evaluator.evaluateAll();
+                return;
+            default:
+                break;
+        }
+
+        long t0 = System.nanoTime();
+        BitSet dirty = new BitSet(plan.size());
+        for (Cell c : changed) {
+            evaluator.notifyUpdateCell(c);
+            plan.collectDependents(c.getRowIndex(), c.getColumnIndex(), dirty);
+        }
+
+        Sheet sh = wb.getSheetAt(0);
+        // Le résultat mis en cache d'un TODAY() date de l'évaluation précédente (la veille, peut-être)
+        for (int f = plan.volatiles.nextSetBit(0); f >= 0; f = plan.volatiles.nextSetBit(f + 1)) {
+            Row row = sh.getRow(plan.rows[f]);
+            Cell cell = (row != null) ? row.getCell(plan.cols[f]) : null;
+            if (cell != null) evaluator.notifyUpdateCell(cell);
+            dirty.set(f);
+            plan.collectDependents(plan.rows[f], plan.cols[f], dirty);
+        }
+
+        int[] order = plan.evaluationOrder(dirty);
+        for (int f : order) {
+            Row row = sh.getRow(plan.rows[f]);
+            Cell cell = (row != null) ? row.getCell(plan.cols[f]) : null;
+            if (cell != null) evaluator.evaluateFormulaCell(cell);
+        }
+        Log.d(TAG, "recalc: " + order.length + "/" + plan.size() + " formulas in "
+                + ((System.nanoTime() - t0) / 1_000L) + " µs");
+    }
+
+    // ------------------- Plan (par modèle) -------------------
+
+    private static Plan planFor(XSSFWorkbook wb) {
+        Sheet sh = wb.getSheetAt(0);
+        List<Cell> formulas = new ArrayList<>();
+        StringBuilder sig = new StringBuilder();
+        for (Row row : sh) {
+            for (Cell cell : row) {
+                if (cell.getCellTypeEnum() != CellType.FORMULA) continue;
+                formulas.add(cell);
+                sig.append(cell.getRowIndex()).append(',').append(cell.getColumnIndex())
+                        .append('=').append(cell.getCellFormula()).append('\n');
+            }
+        }
+        String key = sha1(sig.toString());
+        Plan cached = PLANS.get(key);
+        if (cached != null) return cached;
+
+        long t0 = System.nanoTime();
+        Plan plan = new Plan(formulas, wb, sh.getSheetName());
+        PLANS.put(key, plan);
+        Log.d(TAG, "planFor: built " + plan.size() + " formulas in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+        return plan;
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(d.length * 2);
+            for (byte b : d) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (Exception e) {
+            return String.valueOf(s.hashCode()) + ":" + s.length();
+        }
+    }
+
+    /** Coordonnées des formules + zones lues par chacune ; indépendant de l'instance du classeur. */
+    private static final class Plan {
+        final int[] rows;
+        final int[] cols;
+        // areas[f] = suite de quadruplets {firstRow, lastRow, firstCol, lastCol} lus par la formule f
+        final int[][] areas;
+        // precedents[f] = formules dont f lit le résultat
+        final int[][] precedents;
+        // formules appelant une fonction volatile, directement ou via un nom défini
+        final BitSet volatiles;
+
+        Plan(List<Cell> formulas, XSSFWorkbook wb, String sheetName) {
+            int n = formulas.size();
+            rows = new int[n];
+            cols = new int[n];
+            areas = new int[n][];
+            volatiles = new BitSet(n);
+            XSSFEvaluationWorkbook ewb = XSSFEvaluationWorkbook.create(wb);
+            for (int f = 0; f < n; f++) {
+                Cell cell = formulas.get(f);
+                rows[f] = cell.getRowIndex();
+                cols[f] = cell.getColumnIndex();
+                List<Integer> refs = new ArrayList<>();
+                if (refsOf(cell.getCellFormula(), ewb, sheetName, refs)) volatiles.set(f);
+                areas[f] = toArray(refs);
+            }
+            precedents = new int[n][];
+            for (int f = 0; f < n; f++) {
+                List<Integer> pre = new ArrayList<>();
+                for (int g = 0; g < n; g++) {
+                    if (g != f && reads(f, rows[g], cols[g])) pre.add(g);
+                }
+                precedents[f] = toArray(pre);
+            }
+        }
+
+        int size() {
+            return rows.length;
+        }
+
+        /** Ajoute à {@code out} toutes les formules qui dépendent (transitivement) de (row, col). */
+        void collectDependents(int row, int col, BitSet out) {
+            for (int f = 0; f < rows.length; f++) {
+                if (!out.get(f) && reads(f, row, col)) {
+                    out.set(f);
+                    collectDependents(rows[f], cols[f], out);
+                }
+            }
+        }
+
+        /** Ordre d'évaluation : précédents d'abord (tri topologique restreint à {@code dirty}). */
+        int[] evaluationOrder(BitSet dirty) {
+            int[] order = new int[dirty.cardinality()];
+            int[] pos = { 0 };
+            BitSet seen = new BitSet(rows.length);
+            for (int f = dirty.nextSetBit(0); f >= 0; f = dirty.nextSetBit(f + 1)) {
+                visit(f, dirty, seen, order, pos);
+            }
+            return order;
+        }
+
+        private void visit(int f, BitSet dirty, BitSet seen, int[] order, int[] pos) {
+            if (seen.get(f)) return;
+            seen.set(f);
+            for (int p : precedents[f]) {
+                if (dirty.get(p)) visit(p, dirty, seen, order, pos);
+            }
+            order[pos[0]++] = f;
+        }
+
+        private boolean reads(int f, int row, int col) {
+            int[] a = areas[f];
+            for (int i = 0; i < a.length; i += 4) {
+                if (row >= a[i] && row <= a[i + 1] && col >= a[i + 2] && col <= a[i + 3]) return true;
+            }
+            return false;
+        }
+
+        /** Remplit {@code out} avec les zones lues par la formule ; true si elle est volatile. */
+        private static boolean refsOf(String formula, XSSFEvaluationWorkbook ewb, String sheetName, List<Integer> out) {
+            try {
+                Ptg[] ptgs = FormulaParser.parse(formula, ewb, FormulaType.CELL, 0);
+                return collect(ptgs, ewb, sheetName, out, 0);
+            } catch (Exception e) {
+                // Formule non analysable : on la rattache à toute la feuille et on la réévalue à chaque fois
+                Log.w(TAG, "refsOf: " + formula + " → " + e.getMessage());
+                out.clear();
+                add(out, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+                return true;
+            }
+        }
+
+        private static boolean collect(Ptg[] ptgs, XSSFEvaluationWorkbook ewb, String sheetName,
+                                       List<Integer> out, int depth) {
+            boolean volatileFn = false;
+            for (Ptg ptg : ptgs) {
+                // Références vers une autre feuille : hors périmètre (modèle mono-feuille)
+                if (ptg instanceof Pxg) {
+                    String other = ((Pxg) ptg).getSheetName();
+                    if (other != null && !other.equals(sheetName)) continue;
+                }
+                if (ptg instanceof AreaPtgBase) {
+                    AreaPtgBase a = (AreaPtgBase) ptg;
+                    add(out, a.getFirstRow(), a.getLastRow(), a.getFirstColumn(), a.getLastColumn());
+                } else if (ptg instanceof RefPtgBase) {
+                    RefPtgBase r = (RefPtgBase) ptg;
+                    add(out, r.getRow(), r.getRow(), r.getColumn(), r.getColumn());
+                } else if (ptg instanceof NamePtg) {
+                    EvaluationName name = ewb.getName((NamePtg) ptg);
+                    if (name == null || !name.hasFormula() || depth >= MAX_NAME_DEPTH) {
+                        throw new IllegalStateException("nom non résolu : " + ewb.getNameText((NamePtg) ptg));
+                    }
+                    volatileFn |= collect(name.getNameDefinition(), ewb, sheetName, out, depth + 1);
+                } else if (ptg instanceof AbstractFunctionPtg) {
+                    volatileFn |= VOLATILE_FUNCTIONS.contains(((AbstractFunctionPtg) ptg).getName());
+                }
+            }
+            return volatileFn;
+        }
+
+        private static void add(List<Integer> out, int r1, int r2, int c1, int c2) {
+            out.add(r1);
+            out.add(r2);
+            out.add(c1);
+            out.add(c2);
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] a = new int[list.size()];
+            for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+            return a;
+        }
+    }
+}
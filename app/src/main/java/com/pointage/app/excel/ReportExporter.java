@@ -0,0 +1,230 @@
+package com.pointage.app.excel;
+
+import android.content.Context;
+import android.os.Environment;
+import android.util.Log;
+
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.data.Prefs;
+import com.pointage.app.data.TourEntry;
+import com.pointage.app.util.AtomicFiles;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Relevé mensuel / période de paie à partir de l'historique (HistoryStore).
+ * - SXSSFWorkbook : seules ROW_WINDOW lignes restent en mémoire, le reste part en fichiers
+ *   temporaires compressés (cacheDir/poifiles) → heap constant, 1 mois comme 5 ans
+ * - Une ligne par tour (semaine, date, jour, créneau, début, fin, durée), sous-total par semaine, total période
+ * - Sortie : Documents/Pointage/Rapports/Rapport_<période>.xlsx (partageable via FileProvider), .tmp + rename
+ */
+public final class ReportExporter {
+
+    private static final String TAG = "ReportExporter";
+
+    private static final int ROW_WINDOW = 100;
+    private static final String DIR_NAME = "Pointage";
+    private static final String REPORT_DIR_NAME = "Rapports";
+
+    private static final String[] HEADERS = { "Semaine du", "Date", "Jour", "Créneau", "Début", "Fin", "Durée (h)" };
+    private static final int[] COL_WIDTHS = { 12, 12, 11, 12, 8, 8, 10 }; // en caractères
+
+    private static final DateTimeFormatter DF_DISPLAY = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private ReportExporter() {}
+
+    /** Relevé du mois civil {@code month}. */
+    public static File exportMonth(Context ctx, YearMonth month) throws Exception {
+        return export(ctx, month.atDay(1), month.atEndOfMonth(), "Rapport_" + month + ".xlsx");
+    }
+
+    /** Relevé d'une période de paie, bornes incluses. */
+    public static File exportPeriod(Context ctx, LocalDate from, LocalDate toInclusive) throws Exception {
+        return export(ctx, from, toInclusive, "Rapport_" + from + "_" + toInclusive + ".xlsx");
+    }
+
+    // ------------------- Génération -------------------
+
+    private static File export(Context ctx, LocalDate from, LocalDate toInclusive, String fileName) throws Exception {
+        if (toInclusive.isBefore(from)) {
+            throw new IllegalArgumentException("Période invalide : " + from + " → " + toInclusive);
+        }
+        File dir = new File(new File(ctx.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS), DIR_NAME), REPORT_DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Impossible de créer le dossier " + dir.getAbsolutePath());
+        }
+        File out = new File(dir, fileName);
+
+        // Débordement SXSSF dans le cache de l'app (pas de /tmp sur Android)
+        TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy(new File(ctx.getCacheDir(), "poifiles")));
+
+        ZoneId zone = ZoneId.systemDefault();
+        long fromMs = from.atStartOfDay(zone).toInstant().toEpochMilli();
+        long toMs = toInclusive.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        long t0 = System.nanoTime();
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, ROW_WINDOW, true);
+        try {
+            Writer w = new Writer(wb, zone);
+            w.header(Prefs.getUserName(ctx), from, toInclusive);
+            // lu par tranches (HistoryStore.query) : heap constant côté lecture aussi
+            for (Iterator<TourEntry> it = HistoryStore.query(ctx, fromMs, toMs, null); it.hasNext(); ) {
+                TourEntry e = it.next();
+                w.tour(e.startAt, e.endAt, e.period);
+            }
+            w.finish();
+
+            // SXSSF ferme le flux en fin d'écriture : protégé pour le fsync
+            AtomicFiles.write(out, fos -> wb.write(CloseShieldOutputStream.wrap(fos)));
+            Log.d(TAG, "export: " + w.tours + " tour(s) → " + out.getName() + " in "
+                    + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+            return out;
+        } finally {
+            wb.dispose(); // supprime les fichiers temporaires
+            wb.close();
+        }
+    }
+
+    /** État d'écriture ligne à ligne (aucune ligne n'est relue une fois écrite). */
+    private static final class Writer {
+        final SXSSFSheet sheet;
+        final ZoneId zone;
+        final CellStyle bold;
+        final CellStyle date;
+        final CellStyle time;
+        final CellStyle hours;
+        final CellStyle totalHours;
+
+        int rowNum;
+        int tours;
+        LocalDate currentMonday;
+        double weekHours;
+        double periodHours;
+
+        Writer(SXSSFWorkbook wb, ZoneId zone) {
+            this.sheet = wb.createSheet("Relevé");
+            this.zone = zone;
+
+            // Styles créés UNE fois pour tout le classeur
+            DataFormat df = wb.createDataFormat();
+            Font boldFont = wb.createFont();
+            boldFont.setBold(true);
+            bold = wb.createCellStyle();
+            bold.setFont(boldFont);
+            date = wb.createCellStyle();
+            date.setDataFormat(df.getFormat("dd/mm/yyyy"));
+            time = wb.createCellStyle();
+            time.setDataFormat(df.getFormat("hh:mm"));
+            hours = wb.createCellStyle();
+            hours.setDataFormat(df.getFormat("0.00"));
+            totalHours = wb.createCellStyle();
+            totalHours.setDataFormat(df.getFormat("0.00"));
+            totalHours.setFont(boldFont);
+
+            for (int c = 0; c < COL_WIDTHS.length; c++) sheet.setColumnWidth(c, COL_WIDTHS[c] * 256);
+        }
+
+        void header(String userName, LocalDate from, LocalDate toInclusive) {
+            text(sheet.createRow(rowNum++), 0, "Relevé des tournées", bold);
+            text(sheet.createRow(rowNum++), 0, "Nom : " + (userName != null ? userName : ""), null);
+            text(sheet.createRow(rowNum++), 0, "Période : du " + DF_DISPLAY.format(from) + " au " + DF_DISPLAY.format(toInclusive), null);
+            rowNum++;
+            Row r = sheet.createRow(rowNum++);
+            for (int c = 0; c < HEADERS.length; c++) text(r, c, HEADERS[c], bold);
+            sheet.createFreezePane(0, rowNum);
+        }
+
+        void tour(long startAt, long endAt, String slotLabel) {
+            LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(startAt), zone);
+            LocalDateTime end = LocalDateTime.ofInstant(Instant.ofEpochMilli(endAt), zone);
+            LocalDate day = start.toLocalDate();
+            LocalDate monday = day.minusDays(day.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+
+            if (currentMonday != null && !monday.equals(currentMonday)) weekTotal();
+            currentMonday = monday;
+
+            // même arrondi que la colonne G du modèle : ROUND((F-E)*24, 2)
+            double h = Math.max(0L, endAt - startAt) / 3_600_000d;
+            h = Math.round(h * 100d) / 100d;
+
+            Row r = sheet.createRow(rowNum++);
+            date(r, 0, monday.atStartOfDay(), date);
+            date(r, 1, day.atStartOfDay(), date);
+            text(r, 2, capitalize(day.getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.FRENCH)), null);
+            text(r, 3, slotLabel, null);
+            date(r, 4, start, time);
+            date(r, 5, end, time);
+            number(r, 6, h, hours);
+
+            weekHours += h;
+            periodHours += h;
+            tours++;
+        }
+
+        void finish() {
+            if (currentMonday != null) weekTotal();
+            rowNum++;
+            Row r = sheet.createRow(rowNum++);
+            text(r, 0, "Total période (" + tours + " tournée" + (tours > 1 ? "s" : "") + ")", bold);
+            number(r, 6, round2(periodHours), totalHours);
+        }
+
+        private void weekTotal() {
+            Row r = sheet.createRow(rowNum++);
+            text(r, 0, "Total semaine du " + DF_DISPLAY.format(currentMonday), bold);
+            number(r, 6, round2(weekHours), totalHours);
+            weekHours = 0d;
+        }
+
+        private void text(Row r, int col, String v, CellStyle style) {
+            Cell c = r.createCell(col);
+            c.setCellValue(v != null ? v : "");
+            if (style != null) c.setCellStyle(style);
+        }
+
+        private void number(Row r, int col, double v, CellStyle style) {
+            Cell c = r.createCell(col);
+            c.setCellValue(v);
+            c.setCellStyle(style);
+        }
+
+        private void date(Row r, int col, LocalDateTime v, CellStyle style) {
+            Cell c = r.createCell(col);
+            c.setCellValue(Date.from(v.atZone(zone).toInstant()));
+            c.setCellStyle(style);
+        }
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100d) / 100d;
+    }
+
+    private static String capitalize(String s) {
+        if (s == null || s.isEmpty()) return s;
+        return s.substring(0, 1).toUpperCase(Locale.FRENCH) + s.substring(1);
+    }
+
+}
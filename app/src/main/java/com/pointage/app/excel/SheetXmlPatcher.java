@@ -0,0 +1,341 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import com.pointage.app.util.AtomicFiles;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.stax.OutputFactoryImpl;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.util.CellReference;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Écriture "zéro DOM" de cellules (nombres, textes) de la première feuille.
+ * - Toutes les entrées ZIP sont recopiées BRUTES (octets compressés identiques)
+ * - Seul xl/worksheets/sheet1.xml est re-streamé (aalto StAX) : les &lt;c&gt; ciblés sont réécrits,
+ *   le style (attribut s) de la cellule du modèle est conservé ; les textes sont écrits en inlineStr
+ * - &lt;sheetCalcPr fullCalcOnLoad="1"/&gt; est posé pour que G se recalcule à l'ouverture
+ * - Case "vide" (mustBeEmpty) : absente, sans valeur, ou texte fait seulement d'espaces (même règle que le DOM)
+ * - Mémoire constante quelle que soit la taille du modèle
+ * - Écriture atomique (.tmp + rename)
+ */
+public final class SheetXmlPatcher {
+
+    private static final String TAG = "SheetXmlPatcher";
+
+    static final String SHEET_ENTRY = "xl/worksheets/sheet1.xml";
+    private static final String SHARED_STRINGS_ENTRY = "xl/sharedStrings.xml";
+    private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private SheetXmlPatcher() {}
+
+    /**
+     * Pose les valeurs numériques (ex. dates Excel) dans les cellules données, ex. {"E10" → 45901.33}.
+     * @param refuseFilled true → IllegalStateException("SLOT_FILLED") si une cellule ciblée a déjà une valeur
+     */
+    public static void patchNumericCells(File xlsx, Map<String, Double> values, boolean refuseFilled) throws Exception {
+        patchCells(xlsx, new LinkedHashMap<String, Object>(values),
+                refuseFilled ? values.keySet() : Collections.<String>emptySet());
+    }
+
+    /**
+     * Pose des valeurs Double ou String, ex. {"C4" → "Nom", "E10" → 45901.33}.
+     * @param mustBeEmpty cellules qui doivent être vides, sinon IllegalStateException("SLOT_FILLED")
+     *                    (rien n'est écrit : le fichier d'origine reste intact)
+     */
+    public static void patchCells(File xlsx, Map<String, Object> values, Set<String> mustBeEmpty) throws Exception {
+        patchCells(xlsx, values, mustBeEmpty, null);
+    }
+
+    /** Idem, {@code beforeReplace} appelée juste avant le rename final (cf. {@link AtomicFiles#write}). */
+    public static void patchCells(File xlsx, Map<String, Object> values, Set<String> mustBeEmpty,
+                                  AtomicFiles.BeforeReplace beforeReplace) throws Exception {
+        if (xlsx == null || !xlsx.isFile()) {
+            throw new IllegalArgumentException("xlsx invalide : " + xlsx);
+        }
+        // ligne (1-based) → colonne (0-based) → valeur ; triés pour insérer dans l'ordre du schéma
+        TreeMap<Integer, TreeMap<Integer, Object>> targets = new TreeMap<>();
+        for (Map.Entry<String, Object> e : values.entrySet()) {
+            Object v = e.getValue();
+            if (!(v instanceof Double) && !(v instanceof String)) {
+                throw new IllegalArgumentException("Valeur non supportée pour " + e.getKey() + " : " + v);
+            }
+            CellReference ref = new CellReference(e.getKey());
+            targets.computeIfAbsent(ref.getRow() + 1, k -> new TreeMap<>())
+                    .put((int) ref.getCol(), v);
+        }
+        // mêmes coordonnées normalisées que targets (ex. "e10" → "E10")
+        Set<String> guarded = new HashSet<>();
+        for (String ref : mustBeEmpty) guarded.add(new CellReference(ref).formatAsString());
+
+        long t0 = System.nanoTime();
+        try (ZipFile zip = new ZipFile(new FileInputStream(xlsx).getChannel())) {
+            AtomicFiles.write(xlsx, fos -> {
+                ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new BufferedOutputStream(fos));
+                boolean patched = false;
+                Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (!SHEET_ENTRY.equals(entry.getName())) {
+                        zos.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                        continue;
+                    }
+                    ZipArchiveEntry out = new ZipArchiveEntry(SHEET_ENTRY);
+                    out.setMethod(ZipArchiveEntry.DEFLATED);
+                    out.setTime(entry.getTime());
+                    zos.putArchiveEntry(out);
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        patchSheet(in, zos, targets, guarded, i -> sharedString(zip, i));
+                    }
+                    zos.closeArchiveEntry();
+                    patched = true;
+                }
+                if (!patched) throw new IllegalStateException("Entrée absente : " + SHEET_ENTRY);
+                zos.finish();
+                zos.flush();
+            }, beforeReplace);
+        }
+        Log.d(TAG, "patchCells: " + values.keySet() + " in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+    }
+
+    // ------------------- Streaming sheet1.xml -------------------
+
+    /** Texte de la n-ième chaîne partagée (lu seulement pour une case gardée de type t="s"). */
+    private interface SharedStrings {
+        String get(int index) throws IOException, XMLStreamException;
+    }
+
+    private static void patchSheet(InputStream in, OutputStream out,
+                                   TreeMap<Integer, TreeMap<Integer, Object>> targets,
+                                   Set<String> guarded, SharedStrings shared) throws IOException, XMLStreamException {
+        XMLStreamReader2 r = (XMLStreamReader2) new InputFactoryImpl().createXMLStreamReader(in);
+        XMLStreamWriter2 w = (XMLStreamWriter2) new OutputFactoryImpl().createXMLStreamWriter(out, "UTF-8");
+
+        // Copie défensive : les lignes/cellules écrites sont retirées au fil de l'eau
+        TreeMap<Integer, TreeMap<Integer, Object>> pending = new TreeMap<>();
+        for (Map.Entry<Integer, TreeMap<Integer, Object>> e : targets.entrySet()) {
+            pending.put(e.getKey(), new TreeMap<>(e.getValue()));
+        }
+
+        TreeMap<Integer, Object> rowPending = null; // cellules restantes de la ligne courante
+        int rowNum = 0;
+        boolean afterSheetData = false;
+        boolean calcPrDone = false;
+
+        try {
+            w.writeStartDocument("1.0", "UTF-8", true);
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    String name = r.getLocalName();
+
+                    if (afterSheetData && !calcPrDone) {
+                        calcPrDone = true;
+                        if ("sheetCalcPr".equals(name)) {
+                            copyWithFullCalc(r, w);
+                            continue;
+                        }
+                        writeFullCalc(w);
+                    }
+
+                    if ("row".equals(name)) {
+                        rowNum = Integer.parseInt(r.getAttributeValue(null, "r"));
+                        // lignes ciblées absentes du fichier et situées avant celle-ci
+                        while (!pending.isEmpty() && pending.firstKey() < rowNum) {
+                            Map.Entry<Integer, TreeMap<Integer, Object>> e = pending.pollFirstEntry();
+                            writeRow(w, e.getKey(), e.getValue());
+                        }
+                        rowPending = pending.remove(rowNum);
+                    } else if ("c".equals(name) && rowPending != null && !rowPending.isEmpty()) {
+                        String cellRef = r.getAttributeValue(null, "r");
+                        int col = new CellReference(cellRef).getCol();
+                        // cellules ciblées absentes et situées avant celle-ci
+                        while (!rowPending.isEmpty() && rowPending.firstKey() < col) {
+                            Map.Entry<Integer, Object> e = rowPending.pollFirstEntry();
+                            writeCell(w, rowNum, e.getKey(), null, e.getValue());
+                        }
+                        Object v = rowPending.remove(col);
+                        if (v != null) {
+                            String style = r.getAttributeValue(null, "s");
+                            String type = r.getAttributeValue(null, "t");
+                            String value = skipCellAndReadValue(r);
+                            if (guarded.contains(cellRef) && isFilled(type, value, shared)) {
+                                throw new IllegalStateException("SLOT_FILLED");
+                            }
+                            writeCell(w, rowNum, col, style, v);
+                            continue;
+                        }
+                    }
+                } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                    String name = r.getLocalName();
+                    if ("row".equals(name) && rowPending != null) {
+                        flushRowPending(w, rowNum, rowPending);
+                        rowPending = null;
+                    } else if ("sheetData".equals(name)) {
+                        for (Map.Entry<Integer, TreeMap<Integer, Object>> e : pending.entrySet()) {
+                            writeRow(w, e.getKey(), e.getValue());
+                        }
+                        pending.clear();
+                        w.copyEventFromReader(r, false);
+                        afterSheetData = true;
+                        continue;
+                    } else if ("worksheet".equals(name) && afterSheetData && !calcPrDone) {
+                        calcPrDone = true;
+                        writeFullCalc(w);
+                    }
+                } else if (ev == XMLStreamConstants.END_DOCUMENT) {
+                    break;
+                }
+                w.copyEventFromReader(r, false);
+            }
+            w.writeEndDocument();
+            w.flush();
+        } finally {
+            r.close();
+            w.close();
+        }
+    }
+
+    private static void flushRowPending(XMLStreamWriter2 w, int rowNum, TreeMap<Integer, Object> cells) throws XMLStreamException {
+        for (Map.Entry<Integer, Object> e : cells.entrySet()) {
+            writeCell(w, rowNum, e.getKey(), null, e.getValue());
+        }
+        cells.clear();
+    }
+
+    /**
+     * Consomme le &lt;c&gt; courant jusqu'à sa fermeture. Retourne le texte de sa valeur (&lt;v&gt; ou &lt;is&gt;&lt;t&gt;,
+     * "" si aucune), null s'il porte une formule.
+     */
+    private static String skipCellAndReadValue(XMLStreamReader2 r) throws XMLStreamException {
+        StringBuilder value = new StringBuilder();
+        boolean formula = false;
+        String current = null;
+        int phonetic = 0; // <rPh> : lecture phonétique, pas la valeur
+        int depth = 1;
+        while (depth > 0) {
+            int ev = r.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                current = r.getLocalName();
+                if ("f".equals(current)) formula = true;
+                else if ("rPh".equals(current)) phonetic++;
+            } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if ("rPh".equals(r.getLocalName())) phonetic--;
+                current = null;
+            } else if ((ev == XMLStreamConstants.CHARACTERS || ev == XMLStreamConstants.CDATA)
+                    && phonetic == 0 && ("v".equals(current) || "t".equals(current))) {
+                value.append(r.getText());
+            }
+        }
+        return formula ? null : value.toString();
+    }
+
+    /**
+     * Règle historique d'ExcelTimeWriter : vide = sans valeur ou texte fait seulement d'espaces ;
+     * nombre, booléen, erreur ou formule = rempli.
+     */
+    private static boolean isFilled(String type, String value, SharedStrings shared)
+            throws IOException, XMLStreamException {
+        if (value == null) return true;
+        if (value.trim().isEmpty()) return false;
+        if ("s".equals(type)) return !shared.get(Integer.parseInt(value.trim())).trim().isEmpty();
+        return true;
+    }
+
+    /** Texte de la chaîne partagée {@code index} (&lt;si&gt;, hors lectures phonétiques) ; "" si absente. */
+    private static String sharedString(ZipFile zip, int index) throws IOException, XMLStreamException {
+        ZipArchiveEntry entry = zip.getEntry(SHARED_STRINGS_ENTRY);
+        if (entry == null) return "";
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader2 r = (XMLStreamReader2) new InputFactoryImpl().createXMLStreamReader(in);
+            try {
+                int si = -1;
+                while (r.hasNext()) {
+                    if (r.next() != XMLStreamConstants.START_ELEMENT || !"si".equals(r.getLocalName())) continue;
+                    if (++si == index) return skipCellAndReadValue(r);
+                }
+                return "";
+            } finally {
+                r.close();
+            }
+        }
+    }
+
+    private static void writeRow(XMLStreamWriter2 w, int rowNum, TreeMap<Integer, Object> cells) throws XMLStreamException {
+        w.writeStartElement("", "row", NS_MAIN);
+        w.writeAttribute("r", String.valueOf(rowNum));
+        Iterator<Map.Entry<Integer, Object>> it = cells.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Object> e = it.next();
+            writeCell(w, rowNum, e.getKey(), null, e.getValue());
+        }
+        w.writeEndElement();
+    }
+
+    /**
+     * Double : même sérialisation que XSSFCell#setCellValue(double) → &lt;c r s&gt;&lt;v&gt;String.valueOf(v)&lt;/v&gt;&lt;/c&gt;
+     * String : texte en ligne (pas de sharedStrings.xml à réécrire) → &lt;c r s t="inlineStr"&gt;&lt;is&gt;&lt;t&gt;
+     */
+    private static void writeCell(XMLStreamWriter2 w, int rowNum, int col, String style, Object value) throws XMLStreamException {
+        w.writeStartElement("", "c", NS_MAIN);
+        w.writeAttribute("r", CellReference.convertNumToColString(col) + rowNum);
+        if (style != null) w.writeAttribute("s", style);
+        if (value instanceof String) {
+            String text = (String) value;
+            w.writeAttribute("t", "inlineStr");
+            w.writeStartElement("", "is", NS_MAIN);
+            w.writeStartElement("", "t", NS_MAIN);
+            if (!text.equals(text.trim())) {
+                w.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "space", "preserve");
+            }
+            w.writeCharacters(text);
+            w.writeEndElement();
+            w.writeEndElement();
+        } else {
+            w.writeStartElement("", "v", NS_MAIN);
+            w.writeCharacters(String.valueOf(value));
+            w.writeEndElement();
+        }
+        w.writeEndElement();
+    }
+
+    private static void writeFullCalc(XMLStreamWriter2 w) throws XMLStreamException {
+        w.writeEmptyElement("", "sheetCalcPr", NS_MAIN);
+        w.writeAttribute("fullCalcOnLoad", "1");
+    }
+
+    private static void copyWithFullCalc(XMLStreamReader2 r, XMLStreamWriter2 w) throws XMLStreamException {
+        w.writeStartElement("", "sheetCalcPr", NS_MAIN);
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            if ("fullCalcOnLoad".equals(r.getAttributeLocalName(i))) continue;
+            w.writeAttribute(r.getAttributeLocalName(i), r.getAttributeValue(i));
+        }
+        w.writeAttribute("fullCalcOnLoad", "1");
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import com.pointage.app.util.AtomicFiles;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.stax.OutputFactoryImpl;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Compaction "zéro DOM" de la table cellXfs (xl/styles.xml), gonflée par d'anciennes écritures (un xf par écriture).
+ * - Passe 1 : lecture de styles.xml seul ; rien à faire si la table est petite ou sans doublon
+ * - Passe 2 : réécriture du ZIP, xf en double RETIRÉS de cellXfs et index renumérotés
+ *   (c@s, row@s, col@style de toutes les feuilles) ; autres entrées recopiées brutes
+ * - Le fichier compacté ne contient plus de doublon : la passe 2 ne tourne qu'une fois
+ * - Écriture atomique (.tmp + rename), sous le {@link WeekFileLock} de l'appelant
+ */
+final class StyleCompactor {
+
+    private static final String TAG = "StyleCompactor";
+
+    static final String STYLES_ENTRY = "xl/styles.xml";
+    private static final String SHEETS_PREFIX = "xl/worksheets/";
+
+    private StyleCompactor() {}
+
+    /**
+     * Retire les xf en double si cellXfs dépasse {@code threshold} entrées. Retourne le nombre de xf retirés
+     * (0 → fichier inchangé).
+     */
+    static int compact(File xlsx, int threshold) throws Exception {
+        long t0 = System.nanoTime();
+        int[] newIndex;
+        try (ZipFile zip = new ZipFile(new FileInputStream(xlsx).getChannel())) {
+            ZipArchiveEntry styles = zip.getEntry(STYLES_ENTRY);
+            if (styles == null) return 0;
+            try (InputStream in = zip.getInputStream(styles)) {
+                newIndex = planRemap(in, threshold);
+            }
+            if (newIndex == null) return 0;
+
+            AtomicFiles.write(xlsx, fos -> {
+                ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new BufferedOutputStream(fos));
+                Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    boolean isStyles = STYLES_ENTRY.equals(name);
+                    boolean sheet = name.startsWith(SHEETS_PREFIX) && name.endsWith(".xml")
+                            && name.indexOf('/', SHEETS_PREFIX.length()) < 0;
+                    if (!isStyles && !sheet) {
+                        zos.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                        continue;
+                    }
+                    ZipArchiveEntry out = new ZipArchiveEntry(name);
+                    out.setMethod(ZipArchiveEntry.DEFLATED);
+                    out.setTime(entry.getTime());
+                    zos.putArchiveEntry(out);
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        if (isStyles) rewriteStyles(in, zos, newIndex);
+                        else remapSheet(in, zos, newIndex);
+                    }
+                    zos.closeArchiveEntry();
+                }
+                zos.finish();
+                zos.flush();
+            });
+        }
+        int removed = newIndex.length - kept(newIndex);
+        Log.d(TAG, "compact: " + removed + "/" + newIndex.length + " xf removed in "
+                + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+        return removed;
+    }
+
+    // ------------------- Passe 1 : styles.xml -------------------
+
+    /**
+     * Index d'origine → index dans la table compactée ; les doublons pointent sur leur premier exemplaire.
+     * null si la table ne dépasse pas {@code threshold} ou n'a aucun doublon.
+     */
+    static int[] planRemap(InputStream stylesXml, int threshold) throws XMLStreamException {
+        List<String> keys = new ArrayList<>();
+        XMLStreamReader2 r = (XMLStreamReader2) new InputFactoryImpl().createXMLStreamReader(stylesXml);
+        try {
+            boolean inCellXfs = false;
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    String name = r.getLocalName();
+                    if ("cellXfs".equals(name)) {
+                        inCellXfs = true;
+                    } else if (inCellXfs && "xf".equals(name)) {
+                        StringBuilder key = new StringBuilder();
+                        canonicalElement(r, key);
+                        keys.add(key.toString());
+                    }
+                } else if (ev == XMLStreamConstants.END_ELEMENT && "cellXfs".equals(r.getLocalName())) {
+                    break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+        int n = keys.size();
+        if (n <= threshold) return null;
+
+        int[] newIndex = new int[n];
+        Map<String, Integer> byKey = new HashMap<>();
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            Integer first = byKey.get(keys.get(i));
+            if (first == null) {
+                first = next++;
+                byKey.put(keys.get(i), first);
+            }
+            newIndex[i] = first;
+        }
+        return (next == n) ? null : newIndex;
+    }
+
+    /** Forme canonique du sous-arbre courant (nom, attributs triés, enfants) ; consomme jusqu'à sa fermeture. */
+    private static void canonicalElement(XMLStreamReader2 r, StringBuilder key) throws XMLStreamException {
+        key.append('<').append(r.getLocalName());
+        TreeMap<String, String> attrs = new TreeMap<>();
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            attrs.put(r.getAttributeLocalName(i), r.getAttributeValue(i));
+        }
+        for (Map.Entry<String, String> a : attrs.entrySet()) {
+            key.append(' ').append(a.getKey()).append('=').append(a.getValue());
+        }
+        key.append('>');
+        while (true) {
+            int ev = r.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) {
+                canonicalElement(r, key);
+            } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                key.append("</>");
+                return;
+            } else if (ev == XMLStreamConstants.CHARACTERS && !r.isWhiteSpace()) {
+                key.append(r.getText());
+            }
+        }
+    }
+
+    // ------------------- Passe 2 : réécriture -------------------
+
+    /** styles.xml sans les xf en double de cellXfs (premier exemplaire gardé), count mis à jour. */
+    private static void rewriteStyles(InputStream in, OutputStream out, int[] newIndex) throws XMLStreamException {
+        XMLStreamReader2 r = (XMLStreamReader2) new InputFactoryImpl().createXMLStreamReader(in);
+        XMLStreamWriter2 w = (XMLStreamWriter2) new OutputFactoryImpl().createXMLStreamWriter(out, "UTF-8");
+        try {
+            w.writeStartDocument("1.0", "UTF-8", true);
+            boolean inCellXfs = false;
+            int xf = 0;
+            int kept = 0; // taille courante de la table compactée
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    String name = r.getLocalName();
+                    if ("cellXfs".equals(name)) {
+                        inCellXfs = true;
+                        copyStartElement(r, w, "count", String.valueOf(kept(newIndex)));
+                        continue;
+                    }
+                    if (inCellXfs && "xf".equals(name)) {
+                        boolean keep = newIndex[xf++] == kept;
+                        if (!keep) {
+                            skipElement(r);
+                            continue;
+                        }
+                        kept++;
+                    }
+                } else if (ev == XMLStreamConstants.END_ELEMENT && "cellXfs".equals(r.getLocalName())) {
+                    inCellXfs = false;
+                } else if (ev == XMLStreamConstants.END_DOCUMENT) {
+                    break;
+                }
+                w.copyEventFromReader(r, false);
+            }
+            w.writeEndDocument();
+            w.flush();
+        } finally {
+            r.close();
+            w.close();
+        }
+    }
+
+    /** Feuille recopiée à l'identique, sauf les index de style des cellules, lignes et colonnes. */
+    private static void remapSheet(InputStream in, OutputStream out, int[] newIndex) throws XMLStreamException {
+        XMLStreamReader2 r = (XMLStreamReader2) new InputFactoryImpl().createXMLStreamReader(in);
+        XMLStreamWriter2 w = (XMLStreamWriter2) new OutputFactoryImpl().createXMLStreamWriter(out, "UTF-8");
+        try {
+            w.writeStartDocument("1.0", "UTF-8", true);
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    String name = r.getLocalName();
+                    String attr = ("c".equals(name) || "row".equals(name)) ? "s"
+                            : "col".equals(name) ? "style" : null;
+                    String old = (attr != null) ? r.getAttributeValue(null, attr) : null;
+                    if (old != null) {
+                        copyStartElement(r, w, attr, String.valueOf(remap(newIndex, Integer.parseInt(old))));
+                        continue;
+                    }
+                } else if (ev == XMLStreamConstants.END_DOCUMENT) {
+                    break;
+                }
+                w.copyEventFromReader(r, false);
+            }
+            w.writeEndDocument();
+            w.flush();
+        } finally {
+            r.close();
+            w.close();
+        }
+    }
+
+    /** Recopie l'élément ouvrant courant (namespaces compris) en remplaçant la valeur d'un attribut sans préfixe. */
+    private static void copyStartElement(XMLStreamReader2 r, XMLStreamWriter2 w, String attr, String value)
+            throws XMLStreamException {
+        String prefix = r.getPrefix();
+        w.writeStartElement(prefix != null ? prefix : "", r.getLocalName(), r.getNamespaceURI());
+        for (int i = 0; i < r.getNamespaceCount(); i++) {
+            String p = r.getNamespacePrefix(i);
+            if (p == null || p.isEmpty()) w.writeDefaultNamespace(r.getNamespaceURI(i));
+            else w.writeNamespace(p, r.getNamespaceURI(i));
+        }
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            String ns = r.getAttributeNamespace(i);
+            String local = r.getAttributeLocalName(i);
+            if (ns == null || ns.isEmpty()) {
+                w.writeAttribute(local, attr.equals(local) ? value : r.getAttributeValue(i));
+            } else {
+                w.writeAttribute(r.getAttributePrefix(i), ns, local, r.getAttributeValue(i));
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader2 r) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int ev = r.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (ev == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    private static int remap(int[] newIndex, int idx) {
+        return (idx >= 0 && idx < newIndex.length) ? newIndex[idx] : idx;
+    }
+
+    private static int kept(int[] newIndex) {
+        int max = -1;
+        for (int v : newIndex) max = Math.max(max, v);
+        return max + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Internement des styles de cellule (table cellXfs de styles.xml).
+ * - withFormat() réutilise un xf équivalent existant (même police/bordure/remplissage + même format)
+ *   au lieu d'un createCellStyle() par écriture
+ * - Handles mis en cache par classeur : registre tenu par WeeklyWorkbookSession et jeté avec le classeur
+ * - Doublons déjà présents dans le fichier : retirés au chargement par {@link StyleCompactor}
+ */
+public final class StyleRegistry {
+
+    private static final String TAG = "StyleRegistry";
+
+    private final XSSFWorkbook wb;
+    // "index du style de base|format" → style à poser
+    private final Map<String, CellStyle> cache = new HashMap<>();
+
+    private StyleRegistry(XSSFWorkbook wb) {
+        this.wb = wb;
+    }
+
+    /** Registre de ce classeur ; à garder à côté de lui, tant qu'il vit. */
+    public static StyleRegistry create(XSSFWorkbook wb) {
+        return new StyleRegistry(wb);
+    }
+
+    /**
+     * Style identique à {@code base} mais avec le format {@code format} (ex. "HH:mm").
+     * - base déjà au bon format (ex. hh:mm du modèle) → base
+     * - sinon xf équivalent existant → réutilisé ; à défaut, UN seul xf créé puis mis en cache
+     */
+    public CellStyle withFormat(CellStyle base, String format) {
+        String key = base.getIndex() + "|" + format;
+        CellStyle cached = cache.get(key);
+        if (cached != null) return cached;
+
+        CellStyle style;
+        if (format.equalsIgnoreCase(base.getDataFormatString())) {
+            style = base;
+        } else {
+            style = findEquivalent(base, format);
+            if (style == null) {
+                style = wb.createCellStyle();
+                style.cloneStyleFrom(base);
+                style.setDataFormat(wb.createDataFormat().getFormat(format));
+                Log.d(TAG, "withFormat: created xf #" + style.getIndex() + " (" + format + ")");
+            }
+        }
+        cache.put(key, style);
+        return style;
+    }
+
+    private CellStyle findEquivalent(CellStyle base, String format) {
+        StylesTable st = wb.getStylesSource();
+        String wanted = keyWithoutFormat(st.getCellXfAt(base.getIndex()));
+        for (int i = 0; i < wb.getNumCellStyles(); i++) {
+            CellStyle s = wb.getCellStyleAt(i);
+            if (format.equalsIgnoreCase(s.getDataFormatString())
+                    && wanted.equals(keyWithoutFormat(st.getCellXfAt(i)))) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private static String keyWithoutFormat(CTXf xf) {
+        CTXf copy = (CTXf) xf.copy();
+        if (copy.isSetNumFmtId()) copy.unsetNumFmtId();
+        if (copy.isSetApplyNumberFormat()) copy.unsetApplyNumberFormat();
+        return copy.xmlText();
+    }
+}
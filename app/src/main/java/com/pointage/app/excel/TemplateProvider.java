@@ -0,0 +1,155 @@
+package com.pointage.app.excel;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import com.pointage.app.data.Prefs;
+import com.pointage.app.util.AtomicFiles;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Fournisseur unique du modèle assets/Fichier_vierge.xlsx.
+ * - Asset stocké NON compressé (noCompress 'xlsx') → lisible via AssetFileDescriptor
+ * - Nouveaux fichiers : FileChannel.transferFrom depuis l'APK (pas de boucle 8 Ko), .tmp + rename
+ * - Validation (parse POI) mémorisée par empreinte SHA-1 : re-parse seulement si l'asset change
+ */
+public final class TemplateProvider {
+
+    private static final String TAG = "TemplateProvider";
+
+    public static final String ASSET_TEMPLATE = "Fichier_vierge.xlsx"; // DOIT être dans app/src/main/assets/
+
+    private static volatile String validatedHash; // empreinte déjà validée dans ce process
+
+    private TemplateProvider() {}
+
+    /** Copie le modèle vers {@code dest} (remplacé atomiquement s'il existe). */
+    public static void copyTo(Context ctx, File dest) throws IOException {
+        // même verrou que les écritures : pas de copie pendant qu'une transaction réécrit le fichier
+        try (WeekFileLock ignored = WeekFileLock.acquire(dest)) {
+            copyToLocked(ctx, dest);
+        }
+    }
+
+    private static void copyToLocked(Context ctx, File dest) throws IOException {
+        long t0 = System.nanoTime();
+        AtomicFiles.write(dest, fos -> {
+            AssetFileDescriptor afd = openFd(ctx);
+            if (afd != null) {
+                try (FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+                     FileChannel src = fis.getChannel()) {
+                    // le descripteur pointe sur l'APK entier : on se place au début de l'asset
+                    src.position(afd.getStartOffset());
+                    FileChannel dst = fos.getChannel();
+                    long len = afd.getLength();
+                    long done = 0;
+                    while (done < len) {
+                        long n = dst.transferFrom(src, done, len - done);
+                        if (n <= 0) throw new IOException("transferFrom interrompu à " + done + "/" + len);
+                        done += n;
+                    }
+                } finally {
+                    afd.close();
+                }
+            } else {
+                streamCopy(ctx, fos);
+            }
+        });
+        Log.d(TAG, "copyTo: " + dest.getAbsolutePath() + " in " + ((System.nanoTime() - t0) / 1_000L) + " µs");
+    }
+
+    /** Crée {@code dest} depuis le modèle s'il est absent ou vide ; test et copie sous le même verrou. */
+    public static void ensureCopy(Context ctx, File dest) throws IOException {
+        try (WeekFileLock ignored = WeekFileLock.acquire(dest)) {
+            if (dest.exists() && dest.length() > 0) return;
+            copyToLocked(ctx, dest);
+        }
+    }
+
+    /**
+     * true si le modèle s'ouvre avec POI et contient au moins une feuille.
+     * Le parse n'a lieu qu'une fois par contenu d'asset (empreinte mémorisée dans les prefs).
+     */
+    public static boolean validate(Context ctx) throws Exception {
+        String hash = sha1(ctx);
+        if (hash.equals(validatedHash) || hash.equals(Prefs.getTemplateHash(ctx))) {
+            validatedHash = hash;
+            Log.d(TAG, "validate: cached OK (" + hash + ")");
+            return true;
+        }
+
+        // parse direct depuis l'asset : aucune copie intermédiaire
+        try (InputStream in = ctx.getAssets().open(ASSET_TEMPLATE);
+             OPCPackage pkg = OPCPackage.open(in);
+             XSSFWorkbook wb = new XSSFWorkbook(pkg)) {
+            boolean ok = wb.getNumberOfSheets() > 0;
+            Log.d(TAG, "validate: parsed — sheets=" + wb.getNumberOfSheets() + " hash=" + hash);
+            if (ok) {
+                validatedHash = hash;
+                Prefs.setTemplateHash(ctx, hash);
+            }
+            return ok;
+        }
+    }
+
+    // ------------------- Interne -------------------
+
+    /** null si l'asset est compressé dans l'APK (build sans noCompress) → repli en flux. */
+    private static AssetFileDescriptor openFd(Context ctx) {
+        try {
+            return ctx.getAssets().openFd(ASSET_TEMPLATE);
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "openFd: asset compressé, repli en copie par flux");
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "openFd: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void streamCopy(Context ctx, FileOutputStream out) throws IOException {
+        try (InputStream in = ctx.getAssets().open(ASSET_TEMPLATE)) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        }
+    }
+
+    private static String sha1(Context ctx) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        AssetFileDescriptor afd = openFd(ctx);
+        if (afd != null) {
+            try (FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+                 FileChannel ch = fis.getChannel()) {
+                ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+                md.update(map);
+            } finally {
+                afd.close();
+            }
+        } else {
+            try (InputStream in = ctx.getAssets().open(ASSET_TEMPLATE)) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+            }
+        }
+        byte[] d = md.digest();
+        StringBuilder hex = new StringBuilder(d.length * 2);
+        for (byte b : d) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+}
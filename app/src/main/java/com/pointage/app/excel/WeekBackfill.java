@@ -0,0 +1,237 @@
+package com.pointage.app.excel;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.data.Prefs;
+import com.pointage.app.data.TourTable;
+import com.pointage.app.util.AtomicFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reconstruction des classeurs des semaines passées (Pointage_<lundi>.xlsx) depuis l'historique.
+ * - Cas d'usage : archive corrompue ou supprimée, nouveau modèle Fichier_vierge.xlsx
+ * - Historique lu une fois (HistoryStore.loadTable), découpé par semaine ISO (WeekCalendar)
+ * - Une semaine = copie du modèle + lundi (D6) + nom (C4) + tous ses E/F dans UNE transaction (une sauvegarde)
+ * - Semaines réparties sur un ForkJoinPool dimensionné au nombre de cœurs ; chaque semaine est
+ *   préparée dans son propre sous-dossier (.backfill/<lundi>, verrou distinct) puis publiée par un rename
+ * - Semaine en cours exclue (Pointage_Semaine.xlsx, écrite par le chemin normal)
+ * - Progression : {@link Listener} (threads du pool) ; bilan : {@link Report}
+ */
+public final class WeekBackfill {
+
+    private static final String TAG = "WeekBackfill";
+    private static final String STAGING_DIR = ".backfill";
+
+    private WeekBackfill() {}
+
+    /** Source du modèle et emplacement des archives (Context en production, dossiers en test). */
+    interface Target {
+        void copyTemplate(File dest) throws IOException;
+        File archiveFile(String mondayIso);
+    }
+
+    /** Appelé depuis les threads du pool après chaque semaine (terminée ou en échec). */
+    public interface Listener {
+        void onProgress(int done, int total, double weeksPerSecond);
+    }
+
+    /** Bilan d'une reconstruction. */
+    public static final class Report {
+        public final int weeks;     // semaines à reconstruire
+        public final int written;
+        public final int skipped;   // archive déjà présente (overwrite = false)
+        public final int failed;
+        public final int tours;
+        public final int overwrittenSlots; // deux tours sur la même case : le dernier gagne
+        public final long elapsedMs;
+
+        Report(int weeks, int written, int skipped, int failed, int tours, int overwrittenSlots, long elapsedMs) {
+            this.weeks = weeks;
+            this.written = written;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.tours = tours;
+            this.overwrittenSlots = overwrittenSlots;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public double weeksPerSecond() {
+            return (elapsedMs > 0) ? written * 1000d / elapsedMs : 0d;
+        }
+
+        @Override
+        public String toString() {
+            return "weeks=" + weeks + " written=" + written + " skipped=" + skipped + " failed=" + failed
+                    + " tours=" + tours + " overwrittenSlots=" + overwrittenSlots + " in " + elapsedMs + " ms ("
+                    + String.format(Locale.ROOT, "%.1f", weeksPerSecond()) + " weeks/s)";
+        }
+    }
+
+    /**
+     * Reconstruit toutes les semaines passées ayant au moins un tour. Bloquant : à lancer hors du thread UI.
+     * @param overwrite false → seules les archives absentes sont recréées ; true → toutes (nouveau modèle)
+     */
+    public static Report run(Context ctx, boolean overwrite, Listener listener) throws Exception {
+        Context app = ctx.getApplicationContext();
+        long thisMondayMs = WeekCalendar.mondayStartMs(System.currentTimeMillis());
+        TourTable tours = HistoryStore.loadTable(app, Long.MIN_VALUE, thisMondayMs);
+        Target target = new Target() {
+            @Override public void copyTemplate(File dest) throws IOException {
+                TemplateProvider.copyTo(app, dest);
+            }
+            @Override public File archiveFile(String mondayIso) {
+                return ExcelHelper.getArchiveFile(app, mondayIso);
+            }
+        };
+        return rebuild(tours, Prefs.getUserName(app), new File(ExcelHelper.getWeekDir(app), STAGING_DIR),
+                target, overwrite, listener);
+    }
+
+    /** Reconstruit les semaines de {@code tours} (triée par début) ; {@code staging} est vidé à la fin. */
+    static Report rebuild(TourTable tours, String userName, File staging, Target target,
+                          boolean overwrite, Listener listener) {
+        long t0 = System.nanoTime();
+
+        // Découpage par semaine : la table est triée, une semaine = une plage contiguë [from, to[
+        List<int[]> weeks = new ArrayList<>();
+        int skipped = 0;
+        for (int i = 0; i < tours.size(); ) {
+            long monday = WeekCalendar.mondayEpochDay(tours.startAt(i));
+            int j = i + 1;
+            while (j < tours.size() && WeekCalendar.mondayEpochDay(tours.startAt(j)) == monday) j++;
+            if (overwrite || !target.archiveFile(WeekCalendar.mondayIso(tours.startAt(i))).isFile()) {
+                weeks.add(new int[] { i, j });
+            } else {
+                skipped++;
+            }
+            i = j;
+        }
+
+        Job job = new Job(target, tours, weeks, userName, staging, listener, t0);
+        if (!weeks.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                pool.invoke(new Span(job, 0, weeks.size()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        deleteQuietly(staging);
+
+        Report r = new Report(weeks.size(), job.written.get(), skipped, job.failed.get(), tours.size(),
+                job.overwrittenSlots.get(), (System.nanoTime() - t0) / 1_000_000L);
+        Log.d(TAG, "run: " + r);
+        return r;
+    }
+
+    // ------------------- Interne -------------------
+
+    /** État partagé par les tâches d'une reconstruction. */
+    private static final class Job {
+        final Target target;
+        final TourTable tours;
+        final List<int[]> weeks;
+        final String userName;
+        final File staging;
+        final Listener listener;
+        final long t0;
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger overwrittenSlots = new AtomicInteger();
+
+        Job(Target target, TourTable tours, List<int[]> weeks, String userName, File staging,
+            Listener listener, long t0) {
+            this.target = target;
+            this.tours = tours;
+            this.weeks = weeks;
+            this.userName = userName;
+            this.staging = staging;
+            this.listener = listener;
+            this.t0 = t0;
+        }
+    }
+
+    /** Plage de semaines [from, to[ : coupée en deux jusqu'à une semaine par tâche. */
+    private static final class Span extends RecursiveTask<Void> {
+        private final Job job;
+        private final int from;
+        private final int to;
+
+        Span(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Void compute() {
+            if (to - from == 1) {
+                buildWeek(job, job.weeks.get(from));
+                return null;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Span(job, from, mid), new Span(job, mid, to));
+            return null;
+        }
+    }
+
+    /** Une semaine : modèle → date (D6) + nom + E/F (une sauvegarde) → publication atomique ; échec journalisé et compté. */
+    private static void buildWeek(Job job, int[] range) {
+        TourTable t = job.tours;
+        String mondayIso = WeekCalendar.mondayIso(t.startAt(range[0]));
+        File dir = new File(job.staging, mondayIso); // un dossier par semaine : verrous indépendants
+        File work = new File(dir, "Pointage_" + mondayIso + ".xlsx");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IllegalStateException("mkdirs échoué : " + dir);
+            job.target.copyTemplate(work);
+
+            // D6 = TODAY() dans le modèle : figé au lundi, sinon l'archive montrerait la semaine où on l'ouvre
+            WorkbookTransaction tx = WorkbookTransaction.on(work)
+                    .setNumber(ExcelHelper.REF_WEEK_DATE_D6, ExcelHelper.excelDate(mondayIso));
+            if (job.userName != null && !job.userName.isEmpty()) tx.setString("C4", job.userName);
+            boolean[] used = new boolean[40];
+            for (int i = range[0]; i < range[1]; i++) {
+                int row = WeekCalendar.row(t.startAt(i), t.period(i));
+                if (used[row]) job.overwrittenSlots.incrementAndGet();
+                used[row] = true;
+                tx.setTime("E" + row, new Date(t.startAt(i)));
+                tx.setTime("F" + row, new Date(t.endAt(i)));
+            }
+            tx.commit();
+
+            File target = job.target.archiveFile(mondayIso);
+            try (WeekFileLock ignored = WeekFileLock.acquire(target)) {
+                AtomicFiles.replace(work, target);
+            }
+            job.written.incrementAndGet();
+        } catch (Throwable e) {
+            job.failed.incrementAndGet();
+            Log.e(TAG, "buildWeek " + mondayIso + ": " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(dir);
+            int done = job.done.incrementAndGet();
+            if (job.listener != null) {
+                double secs = (System.nanoTime() - job.t0) / 1e9;
+                job.listener.onProgress(done, job.weeks.size(), (secs > 0) ? done / secs : 0d);
+            }
+        }
+    }
+
+    private static void deleteQuietly(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) deleteQuietly(c);
+        if (f.exists() && !f.delete()) Log.w(TAG, "deleteQuietly: unable to delete " + f.getName());
+    }
+}
@@ -0,0 +1,170 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import com.pointage.app.data.TourClassifier;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+
+/**
+ * Calendrier des semaines du classeur : instant epoch ms → semaine, jour (0..6), ligne Excel.
+ * - Table précalculée des débuts de jour locaux (minuit, ou première heure valide si l'heure d'été saute minuit)
+ *   sur une fenêtre de semaines autour de maintenant, étendue au besoin
+ * - Lookup : index estimé par division, corrigé d'un cran au plus (jours de 23 h / 25 h) → aucune allocation
+ * - Reconstruite seulement quand le fuseau change (invalidate, sur ACTION_TIMEZONE_CHANGED)
+ * - Source unique pour tous les chemins d'écriture (ExcelHelper, ExcelTimeWriter, ExcelManager, WeeklyFileManager)
+ * Ligne = base du créneau (Matin 10, Après-midi 20, Soir 30) + jour.
+ */
+public final class WeekCalendar {
+
+    private static final String TAG = "WeekCalendar";
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final int WEEKS_BEFORE = 106; // ~2 ans d'historique sans reconstruction
+    private static final int WEEKS_AFTER = 54;
+    private static final int MIN_YEAR = 1970;
+    private static final int MAX_YEAR = 2200;
+
+    private static volatile Table table; // null = à (re)construire
+
+    private WeekCalendar() {}
+
+    /** À appeler sur ACTION_TIMEZONE_CHANGED : les débuts de jour sont à recalculer. */
+    public static void invalidate() {
+        table = null;
+    }
+
+    /** Jour dans la semaine : 0 = lundi .. 6 = dimanche. */
+    public static int dayOffset(long epochMs) {
+        Table t = table(epochMs);
+        return t.dayIndex(epochMs) % 7;
+    }
+
+    /** Semaine ISO : année ISO * 100 + semaine (ex. 202542). */
+    public static int weekId(long epochMs) {
+        Table t = table(epochMs);
+        return t.weekIds[t.dayIndex(epochMs) / 7];
+    }
+
+    /** Jour local (LocalDate.toEpochDay) contenant l'instant. */
+    public static long epochDay(long epochMs) {
+        Table t = table(epochMs);
+        return t.firstEpochDay + t.dayIndex(epochMs);
+    }
+
+    /** Lundi de la semaine (LocalDate.toEpochDay). */
+    public static long mondayEpochDay(long epochMs) {
+        Table t = table(epochMs);
+        return t.firstEpochDay + (t.dayIndex(epochMs) / 7) * 7L;
+    }
+
+    /** Lundi de la semaine au format yyyy-MM-dd (noms de fichiers, Prefs) ; chaîne précalculée. */
+    public static String mondayIso(long epochMs) {
+        Table t = table(epochMs);
+        return t.mondayIso[t.dayIndex(epochMs) / 7];
+    }
+
+    /** Début (epoch ms) du lundi de la semaine. */
+    public static long mondayStartMs(long epochMs) {
+        Table t = table(epochMs);
+        return t.dayStarts[(t.dayIndex(epochMs) / 7) * 7];
+    }
+
+    /** Ligne Excel (1-based) du tour commençant à {@code startAtMs}. */
+    public static int row(long startAtMs, TourClassifier.Period p) {
+        return row(p, dayOffset(startAtMs));
+    }
+
+    /** Ligne Excel (1-based) : base du créneau + jour (0..6). */
+    public static int row(TourClassifier.Period p, int dayOffset) {
+        switch (p) {
+            case MORNING: return 10 + dayOffset;
+            case EVENING: return 30 + dayOffset;
+            default:      return 20 + dayOffset; // AFTERNOON
+        }
+    }
+
+    // ------------------- Interne -------------------
+
+    private static Table table(long epochMs) {
+        Table t = table;
+        if (t != null && t.covers(epochMs)) return t;
+        synchronized (WeekCalendar.class) {
+            t = table;
+            if (t != null && t.covers(epochMs)) return t;
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochMs, DAY_MS)); // ±1 jour : marge ci-dessous
+            if (day.getYear() < MIN_YEAR || day.getYear() > MAX_YEAR) {
+                throw new IllegalArgumentException("Instant hors calendrier : " + epochMs);
+            }
+            LocalDate today = LocalDate.now(zone);
+            LocalDate from = mondayOf(min(min(day, today.minusWeeks(WEEKS_BEFORE)),
+                    (t != null) ? LocalDate.ofEpochDay(t.firstEpochDay) : today).minusWeeks(1));
+            LocalDate to = mondayOf(max(max(day, today.plusWeeks(WEEKS_AFTER)),
+                    (t != null) ? LocalDate.ofEpochDay(t.firstEpochDay + t.weekIds.length * 7L) : today).plusWeeks(2));
+            t = Table.build(from, to, zone);
+            table = t;
+            Log.d(TAG, "table: " + from + " → " + to + " (" + t.weekIds.length + " weeks, " + zone + ")");
+            return t;
+        }
+    }
+
+    private static LocalDate mondayOf(LocalDate d) {
+        return d.minusDays(d.getDayOfWeek().getValue() - 1);
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /** Semaines consécutives [from, to[ (lundis) : début de chaque jour + une borne de fin. */
+    private static final class Table {
+        final long firstEpochDay;  // lundi de la première semaine
+        final long[] dayStarts;    // 7 par semaine + 1 (début du lundi suivant la dernière)
+        final int[] weekIds;
+        final String[] mondayIso;
+
+        private Table(long firstEpochDay, long[] dayStarts, int[] weekIds, String[] mondayIso) {
+            this.firstEpochDay = firstEpochDay;
+            this.dayStarts = dayStarts;
+            this.weekIds = weekIds;
+            this.mondayIso = mondayIso;
+        }
+
+        static Table build(LocalDate from, LocalDate to, ZoneId zone) {
+            int weeks = (int) ((to.toEpochDay() - from.toEpochDay()) / 7);
+            long[] dayStarts = new long[weeks * 7 + 1];
+            int[] weekIds = new int[weeks];
+            String[] mondayIso = new String[weeks];
+            LocalDate d = from;
+            for (int i = 0; i < dayStarts.length; i++) {
+                dayStarts[i] = d.atStartOfDay(zone).toInstant().toEpochMilli();
+                if (i % 7 == 0 && i / 7 < weeks) {
+                    weekIds[i / 7] = d.get(IsoFields.WEEK_BASED_YEAR) * 100 + d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+                    mondayIso[i / 7] = d.toString();
+                }
+                d = d.plusDays(1);
+            }
+            return new Table(from.toEpochDay(), dayStarts, weekIds, mondayIso);
+        }
+
+        boolean covers(long epochMs) {
+            return epochMs >= dayStarts[0] && epochMs < dayStarts[dayStarts.length - 1];
+        }
+
+        /** Index du jour contenant l'instant (covers() supposé vrai). */
+        int dayIndex(long epochMs) {
+            int i = (int) ((epochMs - dayStarts[0]) / DAY_MS);
+            if (i >= dayStarts.length - 1) i = dayStarts.length - 2;
+            while (dayStarts[i] > epochMs) i--;
+            while (dayStarts[i + 1] <= epochMs) i++;
+            return i;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verrou d'écriture du dossier Pointage (fichier pointage.lock), à deux étages :
+ * - dans le process : ReentrantLock équitable par fichier → les écrivains font la queue
+ * - entre process   : FileChannel.tryLock sur pointage.lock, avec attente bornée + backoff
+ * - verrou OS libéré automatiquement à la mort du process ; un pointage.lock resté "propriétaire"
+ *   (crash) est simplement repris et compté comme verrou périmé
+ * - métriques d'attente : {@link #stats()}, journalisées par App au passage en arrière-plan
+ * Usage : try (WeekFileLock l = WeekFileLock.acquire(weekFile)) { ... }
+ */
+public final class WeekFileLock implements Closeable {
+
+    private static final String TAG = "WeekFileLock";
+
+    static final String LOCK_NAME = "pointage.lock";
+    static final String BUSY_MESSAGE = "Écriture en cours. Réessaie dans un instant.";
+
+    // Quelques sauvegardes complètes du classeur en file ; appelé hors thread UI uniquement
+    private static final long DEFAULT_TIMEOUT_MS = 10_000L;
+    private static final long MIN_BACKOFF_MS = 5L;
+    private static final long MAX_BACKOFF_MS = 200L;
+    private static final long SLOW_WAIT_MS = 50L;
+
+    private static final Map<String, Holder> HOLDERS = new ConcurrentHashMap<>();
+
+    // Métriques (process) ; mises à jour sous STATS_LOCK
+    private static final Object STATS_LOCK = new Object();
+    private static long acquisitions;
+    private static long contended;
+    private static long timeouts;
+    private static long staleRecovered;
+    private static long totalWaitNs;
+    private static long maxWaitNs;
+
+    private final Holder holder;
+    private boolean released;
+
+    private WeekFileLock(Holder holder) {
+        this.holder = holder;
+    }
+
+    /** Verrou pour écrire {@code weekFile} (attente bornée par défaut). */
+    public static WeekFileLock acquire(File weekFile) throws IOException {
+        return acquire(weekFile, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Attend au plus {@code timeoutMs} (les deux étages confondus).
+     * @throws IllegalStateException si le verrou n'est pas obtenu à temps
+     * @throws InterruptedIOException si le thread est interrompu pendant l'attente
+     */
+    public static WeekFileLock acquire(File weekFile, long timeoutMs) throws IOException {
+        File lockFile = new File(weekFile.getAbsoluteFile().getParentFile(), LOCK_NAME);
+        Holder h = HOLDERS.computeIfAbsent(lockFile.getAbsolutePath(), k -> new Holder(lockFile));
+
+        long t0 = System.nanoTime();
+        long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        try {
+            if (!h.lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+                recordTimeout(t0);
+                throw new IllegalStateException(BUSY_MESSAGE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("acquire interrompu");
+        }
+        boolean ok = false;
+        try {
+            // Ré-entrée (même thread) : le verrou fichier est déjà tenu
+            if (h.lock.getHoldCount() == 1) lockFile(h, deadline, t0);
+            ok = true;
+        } finally {
+            if (!ok) h.lock.unlock();
+        }
+
+        long waited = System.nanoTime() - t0;
+        recordAcquired(waited);
+        if (waited >= TimeUnit.MILLISECONDS.toNanos(SLOW_WAIT_MS)) {
+            Log.d(TAG, "acquire: waited " + TimeUnit.NANOSECONDS.toMillis(waited) + " ms for " + lockFile.getName());
+        }
+        return new WeekFileLock(h);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (released) return;
+        released = true;
+        try {
+            if (holder.lock.getHoldCount() == 1) unlockFile(holder);
+        } finally {
+            holder.lock.unlock();
+        }
+    }
+
+    // ------------------- Métriques -------------------
+
+    /** Instantané des métriques d'attente du process. */
+    public static Stats stats() {
+        synchronized (STATS_LOCK) {
+            return new Stats(acquisitions, contended, timeouts, staleRecovered,
+                    TimeUnit.NANOSECONDS.toMillis(totalWaitNs), TimeUnit.NANOSECONDS.toMillis(maxWaitNs));
+        }
+    }
+
+    public static final class Stats {
+        public final long acquisitions;
+        public final long contended;      // acquisitions ayant attendu > 1 ms
+        public final long timeouts;
+        public final long staleRecovered; // pointage.lock repris après un crash
+        public final long totalWaitMs;
+        public final long maxWaitMs;
+
+        Stats(long acquisitions, long contended, long timeouts, long staleRecovered, long totalWaitMs, long maxWaitMs) {
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.timeouts = timeouts;
+            this.staleRecovered = staleRecovered;
+            this.totalWaitMs = totalWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        public long averageWaitMs() {
+            return acquisitions == 0 ? 0 : totalWaitMs / acquisitions;
+        }
+
+        @Override
+        public String toString() {
+            return "acq=" + acquisitions + " contended=" + contended + " timeouts=" + timeouts
+                    + " stale=" + staleRecovered + " avgWait=" + averageWaitMs() + "ms maxWait=" + maxWaitMs + "ms";
+        }
+    }
+
+    // ------------------- Interne -------------------
+
+    private static final class Holder {
+        final File file;
+        final ReentrantLock lock = new ReentrantLock(true); // équitable : ordre d'arrivée
+        FileChannel channel;
+        FileLock fileLock;
+
+        Holder(File file) {
+            this.file = file;
+        }
+    }
+
+    private static void lockFile(Holder h, long deadline, long t0) throws IOException {
+        FileChannel ch = new RandomAccessFile(h.file, "rw").getChannel();
+        boolean ok = false;
+        try {
+            long backoff = MIN_BACKOFF_MS;
+            while (true) {
+                FileLock fl = ch.tryLock();
+                if (fl != null) {
+                    stampOwner(ch);
+                    h.channel = ch;
+                    h.fileLock = fl;
+                    ok = true;
+                    return;
+                }
+                // tenu par un autre process : attente avec backoff exponentiel
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    recordTimeout(t0);
+                    throw new IllegalStateException(BUSY_MESSAGE);
+                }
+                try {
+                    Thread.sleep(Math.min(backoff, remainingMs));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("acquire interrompu");
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        } finally {
+            if (!ok) ch.close();
+        }
+    }
+
+    /** Le contenu n'est vidé qu'à la libération : non vide ici = propriétaire précédent mort sans libérer. */
+    private static void stampOwner(FileChannel ch) throws IOException {
+        if (ch.size() > 0) {
+            ByteBuffer prev = ByteBuffer.allocate((int) Math.min(ch.size(), 64));
+            ch.read(prev, 0);
+            Log.w(TAG, "stale lock recovered (owner=" + new String(prev.array(), 0, prev.position(), StandardCharsets.UTF_8) + ")");
+            synchronized (STATS_LOCK) { staleRecovered++; }
+        }
+        ch.truncate(0);
+        ch.write(ByteBuffer.wrap((android.os.Process.myPid() + "@" + System.currentTimeMillis())
+                .getBytes(StandardCharsets.UTF_8)), 0);
+    }
+
+    private static void unlockFile(Holder h) throws IOException {
+        try {
+            // le fichier n'est jamais supprimé : un autre process peut déjà attendre dessus
+            if (h.channel != null && h.channel.isOpen()) h.channel.truncate(0);
+        } finally {
+            try {
+                if (h.fileLock != null) h.fileLock.release();
+            } finally {
+                if (h.channel != null) h.channel.close();
+                h.fileLock = null;
+                h.channel = null;
+            }
+        }
+    }
+
+    private static void recordAcquired(long waitedNs) {
+        synchronized (STATS_LOCK) {
+            acquisitions++;
+            if (waitedNs > TimeUnit.MILLISECONDS.toNanos(1)) contended++;
+            totalWaitNs += waitedNs;
+            if (waitedNs > maxWaitNs) maxWaitNs = waitedNs;
+        }
+    }
+
+    private static void recordTimeout(long t0) {
+        synchronized (STATS_LOCK) { timeouts++; }
+        Log.w(TAG, "acquire: timeout after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) + " ms");
+    }
+}
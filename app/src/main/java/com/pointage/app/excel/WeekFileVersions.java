@@ -0,0 +1,318 @@
+package com.pointage.app.excel;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.pointage.app.util.AtomicFiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Générations du classeur de la semaine : chaque remplacement atomique garde la version précédente.
+ * - Juste avant le rename final d'une transaction ({@link Keeper}, sous {@link WeekFileLock}) :
+ *   lien physique de la version courante → .versions/<fichier>/<n>.xlsx (le rename crée un nouvel inode)
+ * - Sans lien possible (stockage externe FUSE, EPERM/ENOSYS/EXDEV mémorisés) : la version courante est
+ *   renommée dans .versions/, le rename du .tmp suit aussitôt → O(1) partout, aucune copie
+ * - Fichier absent (crash entre ces deux renames) : {@link #recover} remet la dernière génération
+ * - Métadonnées <n>.properties : heure, cause, cellules écrites, taille
+ * - Restauration = UN rename de la génération sur le fichier (sous {@link WeekFileLock}) ; la version
+ *   remplacée devient elle-même une génération (restauration annulable)
+ * - Élagage à chaque ajout : au plus {@link #MAX_GENERATIONS}, aucune plus vieille que {@link #MAX_AGE_MS}
+ * - Vidées à la bascule du lundi : l'archive Pointage_<lundi>.xlsx fige la semaine
+ */
+public final class WeekFileVersions {
+
+    private static final String TAG = "WeekFileVersions";
+
+    static final String VERSIONS_DIR = ".versions";
+    static final int MAX_GENERATIONS = 20;
+    static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+
+    private static final String EXT_XLSX = ".xlsx";
+    private static final String EXT_META = ".properties";
+    private static final int MAX_SUMMARY = 240;
+
+    private static volatile boolean linkUnsupported; // EPERM/ENOSYS/EXDEV : rename direct ensuite
+
+    private WeekFileVersions() {}
+
+    /** Une version conservée (la plus récente en tête de {@link #list}). */
+    public static final class Generation {
+        public final long id;
+        public final long timeMs;   // moment où elle a été remplacée
+        public final String cause;  // ex. "tours", "nom", "restauration 12"
+        public final String cells;  // résumé des cellules écrites par le remplacement
+        public final long size;
+        final boolean moved;        // fichier renommé (pas lié) : à remettre en place si le remplacement échoue
+
+        Generation(long id, long timeMs, String cause, String cells, long size, boolean moved) {
+            this.id = id;
+            this.timeMs = timeMs;
+            this.cause = cause;
+            this.cells = cells;
+            this.size = size;
+            this.moved = moved;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + " " + cause + " [" + cells + "] " + size + " B";
+        }
+    }
+
+    // ------------------- API -------------------
+
+    /** Générations de {@code file}, la plus récente d'abord. */
+    public static List<Generation> list(File file) {
+        List<Generation> out = new ArrayList<>();
+        File[] metas = dirOf(file).listFiles((d, name) -> name.endsWith(EXT_META));
+        if (metas == null) return out;
+        for (File meta : metas) {
+            Generation g = read(meta);
+            if (g != null && new File(meta.getParentFile(), g.id + EXT_XLSX).isFile()) out.add(g);
+        }
+        Collections.sort(out, (a, b) -> Long.compare(b.id, a.id));
+        return out;
+    }
+
+    /**
+     * Remet la génération {@code id} en place par un rename (O(1)).
+     * La version courante est d'abord conservée (cause "restauration <id>").
+     */
+    public static void restore(File file, long id) throws IOException {
+        try (WeekFileLock ignored = WeekFileLock.acquire(file)) {
+            File dir = dirOf(file);
+            File gen = new File(dir, id + EXT_XLSX);
+            if (!gen.isFile()) throw new FileNotFoundException("Génération absente : " + id);
+            // élagage après le rename : la génération restaurée pourrait être la plus ancienne
+            Generation current = keep(file, "restauration " + id, "", false);
+            WeeklyWorkbookSession.get().invalidate();
+            boolean ok = false;
+            try {
+                AtomicFiles.replace(gen, file);
+                ok = true;
+            } finally {
+                if (!ok) discard(file, current);
+            }
+            deleteQuietly(new File(dir, id + EXT_META));
+            prune(file, System.currentTimeMillis());
+            Log.d(TAG, "restore: " + file.getName() + " ← #" + id);
+        }
+    }
+
+    /**
+     * Fichier absent mais générations présentes (process tué entre la mise de côté et le rename du .tmp) :
+     * la plus récente est remise en place. Retourne true si le fichier a été restauré.
+     */
+    public static boolean recover(File file) {
+        try (WeekFileLock ignored = WeekFileLock.acquire(file)) {
+            if (file.exists()) return false;
+            List<Generation> gens = list(file);
+            if (gens.isEmpty()) return false;
+            Generation last = gens.get(0);
+            File dir = dirOf(file);
+            AtomicFiles.replace(new File(dir, last.id + EXT_XLSX), file);
+            deleteQuietly(new File(dir, last.id + EXT_META));
+            Log.w(TAG, "recover: " + file.getName() + " ← #" + last.id);
+            return true;
+        } catch (Throwable t) {
+            Log.e(TAG, "recover: " + file.getName() + ": " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    // ------------------- Interne (WorkbookTransaction, ExcelHelper) -------------------
+
+    /** Met la version courante de côté juste avant le rename final d'une transaction. */
+    static Keeper keeper(String cause, String cells) {
+        return new Keeper(cause, cells);
+    }
+
+    /** Branché sur {@link AtomicFiles#write} : verrou du fichier tenu, contenu neuf déjà durable dans le .tmp. */
+    static final class Keeper implements AtomicFiles.BeforeReplace {
+        private final String cause;
+        private final String cells;
+        private File file;
+        private Generation kept;
+
+        private Keeper(String cause, String cells) {
+            this.cause = cause;
+            this.cells = cells;
+        }
+
+        @Override
+        public void run(File dst) {
+            file = dst;
+            kept = keep(dst, cause, cells, true);
+        }
+
+        /** Le remplacement n'a pas abouti : génération retirée, fichier remis en place s'il avait été renommé. */
+        void rollback() {
+            if (file != null) discard(file, kept);
+            kept = null;
+        }
+    }
+
+    /**
+     * Conserve la version courante de {@code file} : lien physique, sinon rename (le fichier disparaît
+     * jusqu'au rename qui suit). Verrou du fichier supposé tenu.
+     * Échec journalisé, jamais propagé : le versionnage ne doit pas bloquer une écriture.
+     * @return la génération créée, ou null
+     */
+    private static Generation keep(File file, String cause, String cells, boolean prune) {
+        if (!file.isFile()) return null;
+        long t0 = System.nanoTime();
+        File dir = dirOf(file);
+        File gen = null;
+        boolean moved = false;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("mkdirs échoué : " + dir);
+            long id = nextId(dir);
+            gen = new File(dir, id + EXT_XLSX);
+            long size = file.length();
+            if (!link(file, gen)) {
+                AtomicFiles.replace(file, gen);
+                moved = true;
+            }
+
+            Generation g = new Generation(id, System.currentTimeMillis(), cause,
+                    (cells.length() > MAX_SUMMARY) ? cells.substring(0, MAX_SUMMARY - 1) + "…" : cells, size, moved);
+            write(g, new File(dir, id + EXT_META));
+            if (prune) prune(file, g.timeMs);
+            Log.d(TAG, "keep: " + g + (moved ? " (rename)" : " (link)") + " in "
+                    + (System.nanoTime() - t0) / 1_000L + " µs");
+            return g;
+        } catch (Throwable t) {
+            Log.e(TAG, "keep: " + file.getName() + ": " + t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+            if (moved) putBack(gen, file);
+            return null;
+        }
+    }
+
+    /** Annule {@link #keep} quand le remplacement n'a pas eu lieu (lot refusé, échec d'écriture). */
+    private static void discard(File file, Generation g) {
+        if (g == null) return;
+        File dir = dirOf(file);
+        File gen = new File(dir, g.id + EXT_XLSX);
+        if (g.moved && !file.exists()) putBack(gen, file);
+        deleteQuietly(new File(dir, g.id + EXT_META));
+        deleteQuietly(gen);
+    }
+
+    private static void putBack(File gen, File file) {
+        try {
+            AtomicFiles.replace(gen, file);
+        } catch (IOException e) {
+            // la génération reste sur disque : recover() la remettra en place
+            Log.e(TAG, "putBack: " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Supprime toutes les générations de {@code file} (bascule du lundi). */
+    static void clear(File file) {
+        File dir = dirOf(file);
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File c : children) deleteQuietly(c);
+        deleteQuietly(dir);
+    }
+
+    private static File dirOf(File file) {
+        String name = file.getName();
+        if (name.endsWith(EXT_XLSX)) name = name.substring(0, name.length() - EXT_XLSX.length());
+        return new File(new File(file.getAbsoluteFile().getParentFile(), VERSIONS_DIR), name);
+    }
+
+    private static long nextId(File dir) {
+        long max = 0;
+        String[] names = dir.list();
+        if (names != null) for (String n : names) max = Math.max(max, idOf(n));
+        return max + 1;
+    }
+
+    /** "12.xlsx" / "12.properties" → 12 ; autre nom → 0. */
+    private static long idOf(String name) {
+        int dot = name.indexOf('.');
+        if (dot <= 0) return 0;
+        try {
+            return Long.parseLong(name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Au plus MAX_GENERATIONS, aucune plus vieille que MAX_AGE_MS ; orphelins (sans métadonnées) supprimés. */
+    private static void prune(File file, long now) {
+        File dir = dirOf(file);
+        List<Generation> gens = list(file);
+        for (int i = 0; i < gens.size(); i++) {
+            Generation g = gens.get(i);
+            if (i >= MAX_GENERATIONS || now - g.timeMs > MAX_AGE_MS) {
+                deleteQuietly(new File(dir, g.id + EXT_META));
+                deleteQuietly(new File(dir, g.id + EXT_XLSX));
+            }
+        }
+        File[] orphans = dir.listFiles((d, name) -> name.endsWith(EXT_XLSX)
+                && !new File(d, idOf(name) + EXT_META).exists());
+        if (orphans != null) for (File f : orphans) deleteQuietly(f);
+    }
+
+    /** Os.link (errno exploitable) ; false → l'appelant renomme. */
+    private static boolean link(File existing, File link) {
+        if (linkUnsupported) return false;
+        try {
+            Os.link(existing.getAbsolutePath(), link.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            // seuls ces errno sont propres au système de fichiers ; EEXIST, EIO… : repli pour cette fois
+            if (e.errno == OsConstants.EPERM || e.errno == OsConstants.ENOSYS || e.errno == OsConstants.EXDEV) {
+                linkUnsupported = true;
+                Log.w(TAG, "link: unsupported here (" + e.getMessage() + "), renaming from now on");
+            } else {
+                Log.w(TAG, "link: " + e.getMessage() + ", renaming this time");
+            }
+            return false;
+        }
+    }
+
+    private static void write(Generation g, File meta) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("id", Long.toString(g.id));
+        p.setProperty("time", Long.toString(g.timeMs));
+        p.setProperty("cause", g.cause);
+        p.setProperty("cells", g.cells);
+        p.setProperty("size", Long.toString(g.size));
+        AtomicFiles.write(meta, fos -> p.store(fos, null));
+    }
+
+    private static Generation read(File meta) {
+        Properties p = new Properties();
+        try (FileInputStream fis = new FileInputStream(meta)) {
+            p.load(fis);
+            return new Generation(
+                    Long.parseLong(p.getProperty("id")),
+                    Long.parseLong(p.getProperty("time")),
+                    p.getProperty("cause", ""),
+                    p.getProperty("cells", ""),
+                    Long.parseLong(p.getProperty("size", "0")),
+                    false);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "read: invalid " + meta.getName() + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    private static void deleteQuietly(File f) {
+        if (f.exists() && !f.delete()) Log.w(TAG, "deleteQuietly: unable to delete " + f.getName());
+    }
+}
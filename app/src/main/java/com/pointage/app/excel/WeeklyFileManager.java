@@ -10,15 +10,10 @@ import androidx.core.content.FileProvider;
 import com.pointage.app.BuildConfig;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 public final class WeeklyFileManager {
 
     private static final String DIR_NAME = "Pointage";
-    private static final String ASSET_MODEL = "Fichier_vierge.xlsx"; // ton modèle en assets/
     private static final String MIME_XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
     private WeeklyFileManager() {}
@@ -28,22 +23,13 @@ public final class WeeklyFileManager {
         File dir = new File(ctx.getExternalFilesDir(android.os.Environment.DIRECTORY_DOCUMENTS), DIR_NAME);
         if (!dir.exists()) dir.mkdirs();
 
-        LocalDate today = LocalDate.now();
-        LocalDate monday = today.minusDays((today.getDayOfWeek().getValue() + 6) % 7); // lundi = 1
-        String name = "Pointage_" + monday.format(DateTimeFormatter.ISO_DATE) + ".xlsx";
+        String name = "Pointage_" + WeekCalendar.mondayIso(System.currentTimeMillis()) + ".xlsx";
         return new File(dir, name);
     }
 
-    /** Crée le fichier depuis assets si absent (copie byte-for-byte). */
+    /** Crée le fichier depuis assets si absent ou vide (copie byte-for-byte via TemplateProvider). */
     public static void ensureExists(Context ctx, File weeklyXlsx) throws Exception {
-        if (weeklyXlsx.exists()) return;
-        try (InputStream in = ctx.getAssets().open(ASSET_MODEL);
-             FileOutputStream out = new FileOutputStream(weeklyXlsx)) {
-            byte[] buf = new byte[8192];
-            int n;
-            while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
-            out.flush();
-        }
+        TemplateProvider.ensureCopy(ctx, weeklyXlsx);
     }
 
     /** Uri FileProvider pour partager/ouvrir. */
@@ -0,0 +1,160 @@
+package com.pointage.app.excel;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import com.pointage.app.util.AtomicFiles;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Session d'écriture process-wide sur le classeur de la semaine.
+ * - Le XSSFWorkbook est chargé UNE fois (OPCPackage) puis gardé en mémoire
+ * - Chaque mutation s'applique sur le DOM en mémoire, puis flush atomique (.tmp + rename)
+ * - La session s'invalide si mtime/taille du fichier changent en dehors d'elle
+ * - onTrimMemory (mémoire basse / process en arrière-plan) → on relâche le classeur (rechargé au prochain besoin)
+ * - Table de styles gonflée par d'anciennes écritures → doublons retirés du fichier au chargement (StyleCompactor)
+ * - Registre de styles et évaluateur de formules tenus ici, jetés avec le classeur
+ */
+public final class WeeklyWorkbookSession {
+
+    private static final String TAG = "WeeklyWorkbookSession";
+
+    // Au-delà, le classeur a pu être gonflé (un xf par écriture) : recherche de doublons au chargement
+    private static final int STYLE_COMPACT_THRESHOLD = 64;
+
+    private static final WeeklyWorkbookSession INSTANCE = new WeeklyWorkbookSession();
+
+    /** Modification appliquée sur le classeur en mémoire, avant flush. */
+    public interface Mutation {
+        void apply(XSSFWorkbook wb) throws Exception;
+    }
+
+    private File file;
+    private XSSFWorkbook wb;
+    private StyleRegistry styles;   // styles internés du classeur en mémoire, jetés avec lui
+    private FormulaRecalc formulas; // évaluateur du classeur en mémoire, jeté avec lui
+    private long knownMtime;
+    private long knownLength;
+
+    private WeeklyWorkbookSession() {}
+
+    public static WeeklyWorkbookSession get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Applique la mutation sur le classeur (chargé si besoin) puis l'écrit atomiquement.
+     * En cas d'échec, le DOM est jeté : il peut être à moitié modifié.
+     */
+    public synchronized void apply(File weekFile, Mutation mutation) throws Exception {
+        apply(weekFile, mutation, null);
+    }
+
+    /** Idem, {@code beforeReplace} appelée juste avant le rename final (cf. {@link AtomicFiles#write}). */
+    public synchronized void apply(File weekFile, Mutation mutation, AtomicFiles.BeforeReplace beforeReplace)
+            throws Exception {
+        XSSFWorkbook book = acquire(weekFile);
+        try {
+            mutation.apply(book);
+            flush(book, weekFile, beforeReplace);
+        } catch (Exception e) {
+            invalidate();
+            throw e;
+        }
+    }
+
+    /**
+     * true pour le classeur de la semaine (Pointage_Semaine.xlsx) : la session l'ouvre à la première écriture
+     * et le garde. Les fichiers de préparation ou de reconstruction, écrits une fois, restent en streaming.
+     */
+    public static boolean isSessionFile(File f) {
+        return ExcelHelper.WEEK_FILE_NAME.equals(f.getName());
+    }
+
+    /** Styles internés du classeur en cours de mutation ; à n'appeler que depuis {@link Mutation#apply}. */
+    synchronized StyleRegistry styles() {
+        if (wb == null) throw new IllegalStateException("styles: aucun classeur chargé");
+        if (styles == null) styles = StyleRegistry.create(wb);
+        return styles;
+    }
+
+    /** Recalcul ciblé du classeur en cours de mutation ; à n'appeler que depuis {@link Mutation#apply}. */
+    synchronized FormulaRecalc formulas() {
+        if (wb == null) throw new IllegalStateException("formulas: aucun classeur chargé");
+        if (formulas == null) formulas = FormulaRecalc.create(wb);
+        return formulas;
+    }
+
+    /** true si le classeur de ce fichier est déjà en mémoire et toujours à jour. */
+    public synchronized boolean isWarm(File weekFile) {
+        return wb != null && weekFile.equals(file) && !isStale(weekFile);
+    }
+
+    /** Relâche le classeur en mémoire (prochaine écriture = rechargement). */
+    public synchronized void invalidate() {
+        if (wb != null) {
+            try { wb.close(); } catch (IOException ignore) {}
+            Log.d(TAG, "invalidate: workbook released");
+        }
+        wb = null;
+        styles = null;
+        formulas = null;
+        file = null;
+        knownMtime = 0L;
+        knownLength = 0L;
+    }
+
+    /**
+     * À brancher sur Application#onTrimMemory. Relâché sous pression réelle seulement (RUNNING_LOW/CRITICAL, ou
+     * process en arrière-plan dans la liste LRU) : un simple passage en arrière-plan (UI_HIDDEN) le garde.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                        && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)) {
+            invalidate();
+        }
+    }
+
+    // ------------------- Interne -------------------
+
+    private XSSFWorkbook acquire(File weekFile) throws Exception {
+        if (wb != null && weekFile.equals(file) && !isStale(weekFile)) {
+            return wb;
+        }
+        invalidate();
+
+        long t0 = System.nanoTime();
+        // sous le WeekFileLock du commit : le fichier compacté n'a plus de doublon, la réécriture ne tourne qu'une fois
+        StyleCompactor.compact(weekFile, STYLE_COMPACT_THRESHOLD);
+        // ⚠️ ouverture via OPCPackage + FileInputStream (cf. ExcelHelper) : le fichier n'est pas gardé ouvert
+        try (FileInputStream fis = new FileInputStream(weekFile)) {
+            OPCPackage pkg = OPCPackage.open(fis);
+            wb = new XSSFWorkbook(pkg);
+        }
+        file = weekFile;
+        knownMtime = weekFile.lastModified();
+        knownLength = weekFile.length();
+        Log.d(TAG, "acquire: loaded in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms");
+        return wb;
+    }
+
+    private boolean isStale(File weekFile) {
+        return weekFile.lastModified() != knownMtime || weekFile.length() != knownLength;
+    }
+
+    private void flush(XSSFWorkbook book, File weekFile, AtomicFiles.BeforeReplace beforeReplace) throws IOException {
+        // POI ferme le flux en fin d'écriture : on le protège pour pouvoir fsync ensuite
+        AtomicFiles.write(weekFile, fos -> book.write(CloseShieldOutputStream.wrap(fos)), beforeReplace);
+        knownMtime = weekFile.lastModified();
+        knownLength = weekFile.length();
+        Log.d(TAG, "flush: wrote " + weekFile.getAbsolutePath());
+    }
+}
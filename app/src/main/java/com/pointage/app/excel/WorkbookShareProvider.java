@@ -0,0 +1,288 @@
+package com.pointage.app.excel;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import com.pointage.app.data.Prefs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Partage des classeurs sans exposer le fichier de travail (remplace FileProvider pour l'ouverture / le partage).
+ * - content://<app>.workbooks/week/current          → Pointage_Semaine.xlsx
+ * - content://<app>.workbooks/week/<lundi>          → Pointage_<lundi>.xlsx (archive)
+ * - content://<app>.workbooks/bundle/<lundi>/<lundi> → ZIP des semaines disponibles entre les deux lundis inclus
+ * - Instantané : fichiers ouverts sous {@link WeekFileLock} (quelques µs), puis lus sans verrou ;
+ *   les écritures remplacent le fichier par rename, un descripteur ouvert garde donc l'ancienne version entière
+ * - Flux servi par un pipe (openPipeHelper) : aucune copie sur disque, ZIP assemblé à la volée
+ * Lecture seule, non exporté : accès par FLAG_GRANT_READ_URI_PERMISSION.
+ */
+public final class WorkbookShareProvider extends ContentProvider {
+
+    private static final String TAG = "WorkbookShareProvider";
+
+    public static final String MIME_XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    public static final String MIME_ZIP = "application/zip";
+
+    private static final String AUTHORITY_SUFFIX = ".workbooks";
+    private static final String PATH_WEEK = "week";
+    private static final String PATH_BUNDLE = "bundle";
+    private static final String CURRENT = "current";
+    private static final String WEEK_FILE_PREFIX = "Pointage_";
+
+    private static final Pattern MONDAY_ISO = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final int MAX_BUNDLE_WEEKS = 106; // ~2 ans, comme la fenêtre de WeekCalendar
+    private static final long SNAPSHOT_LOCK_TIMEOUT_MS = 2_000L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // ------------------- URIs -------------------
+
+    /** Semaine en cours (Pointage_Semaine.xlsx). */
+    public static Uri currentWeekUri(Context ctx) {
+        return base(ctx).appendPath(PATH_WEEK).appendPath(CURRENT).build();
+    }
+
+    /** Semaine archivée (lundi yyyy-MM-dd). */
+    public static Uri weekUri(Context ctx, String mondayIso) {
+        return base(ctx).appendPath(PATH_WEEK).appendPath(mondayIso).build();
+    }
+
+    /** ZIP des semaines [fromMonday, toMonday] (yyyy-MM-dd) ; semaine en cours comprise si dans l'intervalle. */
+    public static Uri bundleUri(Context ctx, String fromMondayIso, String toMondayIso) {
+        return base(ctx).appendPath(PATH_BUNDLE).appendPath(fromMondayIso).appendPath(toMondayIso).build();
+    }
+
+    private static Uri.Builder base(Context ctx) {
+        return new Uri.Builder().scheme("content").authority(ctx.getPackageName() + AUTHORITY_SUFFIX);
+    }
+
+    // ------------------- ContentProvider -------------------
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        List<String> seg = uri.getPathSegments();
+        if (seg.size() == 2 && PATH_WEEK.equals(seg.get(0))) return MIME_XLSX;
+        if (seg.size() == 3 && PATH_BUNDLE.equals(seg.get(0))) return MIME_ZIP;
+        return null;
+    }
+
+    /** OpenableColumns : nom affiché ; taille connue pour un classeur seul, inconnue (null) pour un ZIP. */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String[] cols = (projection != null) ? projection
+                : new String[] { OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE };
+        String name;
+        Long size = null;
+        try {
+            name = displayName(uri);
+            List<String> seg = uri.getPathSegments();
+            if (PATH_WEEK.equals(seg.get(0))) size = resolveWeek(seg.get(1)).length();
+        } catch (FileNotFoundException e) {
+            return new MatrixCursor(cols, 0);
+        }
+        MatrixCursor c = new MatrixCursor(cols, 1);
+        Object[] row = new Object[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(cols[i])) row[i] = name;
+            else if (OpenableColumns.SIZE.equals(cols[i])) row[i] = size;
+        }
+        c.addRow(row);
+        return c;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (mode == null || !mode.equals("r")) throw new SecurityException("Lecture seule : " + mode);
+        List<String> seg = uri.getPathSegments();
+        Snapshot snap;
+        if (seg.size() == 2 && PATH_WEEK.equals(seg.get(0))) {
+            File f = weekFile(seg.get(1)); // existence vérifiée sous le verrou (bascule du lundi)
+            snap = Snapshot.open(f, new String[] { f.getName() }, new File[] { f }, false);
+        } else if (seg.size() == 3 && PATH_BUNDLE.equals(seg.get(0))) {
+            snap = openBundle(seg.get(1), seg.get(2));
+        } else {
+            throw new FileNotFoundException("URI inconnue : " + uri);
+        }
+        return openPipeHelper(uri, snap.zip ? MIME_ZIP : MIME_XLSX, null, snap, WRITER);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Lecture seule");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Lecture seule");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Lecture seule");
+    }
+
+    // ------------------- Interne -------------------
+
+    private String displayName(Uri uri) throws FileNotFoundException {
+        List<String> seg = uri.getPathSegments();
+        if (seg.size() == 2 && PATH_WEEK.equals(seg.get(0))) return resolveWeek(seg.get(1)).getName();
+        if (seg.size() == 3 && PATH_BUNDLE.equals(seg.get(0))) {
+            return WEEK_FILE_PREFIX + checkMonday(seg.get(1)) + "_" + checkMonday(seg.get(2)) + ".zip";
+        }
+        throw new FileNotFoundException("URI inconnue : " + uri);
+    }
+
+    private File weekFile(String key) throws FileNotFoundException {
+        Context ctx = getContext();
+        return CURRENT.equals(key) ? ExcelHelper.getWeekFile(ctx) : ExcelHelper.getArchiveFile(ctx, checkMonday(key));
+    }
+
+    private File resolveWeek(String key) throws FileNotFoundException {
+        File f = weekFile(key);
+        if (!f.isFile()) throw new FileNotFoundException("Classeur introuvable : " + f.getName());
+        return f;
+    }
+
+    /** Semaines disponibles de l'intervalle, ouvertes d'un coup sous le verrou (un seul instantané cohérent). */
+    private Snapshot openBundle(String fromIso, String toIso) throws FileNotFoundException {
+        LocalDate from = LocalDate.parse(checkMonday(fromIso));
+        LocalDate to = LocalDate.parse(checkMonday(toIso));
+        if (to.isBefore(from) || from.plusWeeks(MAX_BUNDLE_WEEKS).isBefore(to)) {
+            throw new FileNotFoundException("Intervalle invalide : " + fromIso + " → " + toIso);
+        }
+        Context ctx = getContext();
+        String currentMonday = Prefs.getWeekMonday(ctx);
+        if (currentMonday.isEmpty()) currentMonday = WeekCalendar.mondayIso(System.currentTimeMillis());
+
+        List<String> names = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusWeeks(1)) {
+            String monday = d.toString();
+            File f = monday.equals(currentMonday) ? ExcelHelper.getWeekFile(ctx) : ExcelHelper.getArchiveFile(ctx, monday);
+            if (!f.isFile()) continue;
+            names.add(WEEK_FILE_PREFIX + monday + ".xlsx");
+            files.add(f);
+        }
+        if (files.isEmpty()) throw new FileNotFoundException("Aucun classeur entre " + fromIso + " et " + toIso);
+        return Snapshot.open(ExcelHelper.getWeekFile(ctx), names.toArray(new String[0]), files.toArray(new File[0]), true);
+    }
+
+    private static String checkMonday(String iso) throws FileNotFoundException {
+        if (iso == null || !MONDAY_ISO.matcher(iso).matches()) throw new FileNotFoundException("Lundi invalide : " + iso);
+        try {
+            LocalDate.parse(iso);
+        } catch (DateTimeParseException e) {
+            throw new FileNotFoundException("Lundi invalide : " + iso);
+        }
+        return iso;
+    }
+
+    /** Descripteurs ouverts au même instant : le contenu servi ne bouge plus, quelles que soient les écritures. */
+    private static final class Snapshot {
+        final String[] names;
+        final InputStream[] streams;
+        final boolean zip;
+
+        private Snapshot(String[] names, InputStream[] streams, boolean zip) {
+            this.names = names;
+            this.streams = streams;
+            this.zip = zip;
+        }
+
+        /**
+         * Ouvre les fichiers sous le verrou du dossier : pas de lecture pendant la bascule du lundi
+         * (fichier courant absent entre deux renames). Verrou indisponible → ouverture sans verrou
+         * (les écritures passent par rename : le fichier lu reste entier).
+         */
+        static Snapshot open(File lockTarget, String[] names, File[] files, boolean zip) throws FileNotFoundException {
+            InputStream[] streams = new InputStream[files.length];
+            WeekFileLock lock = null;
+            try {
+                lock = WeekFileLock.acquire(lockTarget, SNAPSHOT_LOCK_TIMEOUT_MS);
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "snapshot: lock unavailable (" + e.getMessage() + "), opening unlocked");
+            }
+            try {
+                for (int i = 0; i < files.length; i++) streams[i] = new FileInputStream(files[i]);
+            } catch (FileNotFoundException e) {
+                closeAll(streams);
+                throw e;
+            } finally {
+                if (lock != null) {
+                    try { lock.close(); } catch (IOException e) { Log.w(TAG, "snapshot: unlock failed", e); }
+                }
+            }
+            return new Snapshot(names, streams, zip);
+        }
+    }
+
+    /** Copie l'instantané dans le pipe (thread de openPipeHelper) ; lecteur parti → arrêt silencieux. */
+    private static final PipeDataWriter<Snapshot> WRITER = new PipeDataWriter<Snapshot>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, Snapshot snap) {
+            long t0 = System.nanoTime();
+            byte[] buf = new byte[BUFFER_SIZE];
+            try (OutputStream out = new FileOutputStream(output.getFileDescriptor())) {
+                if (snap.zip) {
+                    ZipOutputStream zos = new ZipOutputStream(out);
+                    zos.setLevel(Deflater.NO_COMPRESSION); // .xlsx déjà compressé : inutile de recompresser
+                    for (int i = 0; i < snap.streams.length; i++) {
+                        zos.putNextEntry(new ZipEntry(snap.names[i]));
+                        copy(snap.streams[i], zos, buf);
+                        zos.closeEntry();
+                    }
+                    zos.finish();
+                } else {
+                    copy(snap.streams[0], out, buf);
+                }
+                out.flush();
+                Log.d(TAG, "served " + uri.getLastPathSegment() + " (" + snap.streams.length + " file(s)) in "
+                        + (System.nanoTime() - t0) / 1_000_000L + " ms");
+            } catch (IOException e) {
+                // EPIPE : le client a fermé avant la fin (annulation, aperçu partiel)
+                Log.d(TAG, "writeDataToPipe: " + uri.getLastPathSegment() + " interrupted: " + e.getMessage());
+            } finally {
+                closeAll(snap.streams);
+            }
+        }
+    };
+
+    private static void copy(InputStream in, OutputStream out, byte[] buf) throws IOException {
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+    }
+
+    private static void closeAll(InputStream[] streams) {
+        for (InputStream in : streams) {
+            if (in == null) continue;
+            try { in.close(); } catch (IOException ignore) {}
+        }
+    }
+}
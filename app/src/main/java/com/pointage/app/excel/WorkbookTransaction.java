@@ -0,0 +1,208 @@
+package com.pointage.app.excel;
+
+import android.util.Log;
+
+import com.pointage.app.data.ShiftRules;
+import com.pointage.app.util.AtomicFiles;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lot d'écritures de cellules (feuille 0) appliqué en UN chargement + UNE sauvegarde.
+ * - setString / setNumber / setTime : nom (C4), heures E/F, futures colonnes…
+ * - requireEmpty : refuse tout le lot si la case est déjà remplie → IllegalStateException("SLOT_FILLED")
+ *   (texte fait seulement d'espaces = vide)
+ * - Atomique : vérifications AVANT toute écriture, puis fichier remplacé par rename ;
+ *   en cas d'échec, le fichier d'origine est intact et rien du lot n'est visible
+ * - Classeur de la semaine (ou déjà en session) → DOM de la session, ouvert à la première écriture :
+ *   recalcul selon {@link #recalc}, styles internés ; autres fichiers → patch streaming de sheet1.xml
+ *   (fullCalcOnLoad : le mode de recalcul n'y a pas d'effet)
+ * - Sérialisé par {@link WeekFileLock} (threads + process)
+ * - keepVersion : version remplacée conservée par {@link WeekFileVersions} (cause + cellules écrites)
+ */
+public final class WorkbookTransaction {
+
+    private static final String TAG = "WorkbookTransaction";
+    private static final String TIME_FORMAT = "HH:mm";
+
+    private final File file;
+    // "E10" → Double (nombre / date Excel) ou String ; ordre d'ajout conservé
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private final Set<String> timeRefs = new HashSet<>();
+    private final Set<String> mustBeEmpty = new LinkedHashSet<>();
+    private FormulaRecalc.Mode recalc = FormulaRecalc.Mode.TARGETED;
+    private String versionCause; // null = pas de génération (fichiers de préparation)
+
+    private WorkbookTransaction(File file) {
+        this.file = file;
+    }
+
+    /** Nouvelle transaction sur le classeur de la semaine. */
+    public static WorkbookTransaction on(File weekFile) {
+        return new WorkbookTransaction(weekFile);
+    }
+
+    public WorkbookTransaction setString(String ref, String value) {
+        return put(ref, value != null ? value : "");
+    }
+
+    public WorkbookTransaction setNumber(String ref, double value) {
+        return put(ref, value);
+    }
+
+    /** Date/heure Excel, affichée HH:mm (style du modèle conservé s'il est déjà en hh:mm). */
+    public WorkbookTransaction setTime(String ref, Date value) {
+        put(ref, DateUtil.getExcelDate(value));
+        timeRefs.add(normalize(ref));
+        return this;
+    }
+
+    /** La case doit être vide au moment du commit, sinon tout le lot est refusé. */
+    public WorkbookTransaction requireEmpty(String ref) {
+        mustBeEmpty.add(normalize(ref));
+        return this;
+    }
+
+    /** Mode de recalcul des formules dépendantes (TARGETED par défaut). */
+    public WorkbookTransaction recalc(FormulaRecalc.Mode mode) {
+        this.recalc = mode;
+        return this;
+    }
+
+    /** Conserve la version remplacée (fichier de la semaine) ; {@code cause} apparaît dans ses métadonnées. */
+    public WorkbookTransaction keepVersion(String cause) {
+        this.versionCause = cause;
+        return this;
+    }
+
+    /** Applique tout le lot, ou rien. */
+    public void commit() throws Exception {
+        if (file == null || !file.isFile()) {
+            throw new IllegalArgumentException("weekFile invalide : " + file);
+        }
+        if (values.isEmpty()) return;
+
+        // Écrivains concurrents (threads ou process) : attente en file, pas d'échec immédiat
+        try (WeekFileLock ignored = WeekFileLock.acquire(file)) {
+            // version courante mise de côté juste avant le rename ; remise en place si le lot n'aboutit pas
+            WeekFileVersions.Keeper keeper = (versionCause != null)
+                    ? WeekFileVersions.keeper(versionCause, summary()) : null;
+            boolean ok = false;
+            try {
+                commitLocked(keeper);
+                ok = true;
+            } finally {
+                if (!ok && keeper != null) keeper.rollback();
+            }
+        }
+    }
+
+    private void commitLocked(AtomicFiles.BeforeReplace beforeReplace) throws Exception {
+        WeeklyWorkbookSession session = WeeklyWorkbookSession.get();
+        if (!session.isWarm(file) && !WeeklyWorkbookSession.isSessionFile(file)) {
+            // Fichier écrit une fois (préparation, reconstruction) : patch streaming plutôt qu'un parse DOM complet
+            SheetXmlPatcher.patchCells(file, values, mustBeEmpty, beforeReplace);
+            Log.d(TAG, "commit: OK (stream) cells=" + values.keySet());
+            return;
+        }
+
+        // La session jette le DOM si la mutation échoue : aucune écriture partielle ne survit
+        session.apply(file, wb -> {
+            Sheet sh = wb.getSheetAt(0);
+            for (String ref : mustBeEmpty) {
+                if (isFilled(sh, new CellReference(ref))) {
+                    throw new IllegalStateException("SLOT_FILLED");
+                }
+            }
+
+            StyleRegistry styles = session.styles();
+            List<Cell> changed = new ArrayList<>(values.size());
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                Cell cell = getOrCreateCell(sh, new CellReference(e.getKey()));
+                Object v = e.getValue();
+                // valeur posée sur une formule (ex. D6 = TODAY() figé) : la formule disparaît, comme en streaming
+                if (cell.getCellTypeEnum() == CellType.FORMULA) cell.setCellType(CellType.BLANK);
+                if (v instanceof String) {
+                    // texte en ligne (posé par SheetXmlPatcher) : POI lirait encore l'ancien <is>
+                    if (((XSSFCell) cell).getCTCell().isSetIs()) cell.setCellType(CellType.BLANK);
+                    cell.setCellValue((String) v);
+                } else {
+                    cell.setCellValue((Double) v);
+                }
+                if (timeRefs.contains(e.getKey())) {
+                    cell.setCellStyle(styles.withFormat(cell.getCellStyle(), TIME_FORMAT));
+                }
+                changed.add(cell);
+            }
+
+            // recalcul des seules formules dépendant des cellules écrites
+            session.formulas().recalc(changed, recalc);
+        }, beforeReplace);
+        Log.d(TAG, "commit: OK cells=" + values.keySet());
+    }
+
+    // ------------------- Interne -------------------
+
+    /** Cellules du lot pour les métadonnées de version, ex. "C4=Dupont E10=08:00 F10=12:15". */
+    private String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> e : values.entrySet()) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(e.getKey()).append('=');
+            Object v = e.getValue();
+            if (timeRefs.contains(e.getKey())) {
+                int min = (int) Math.round(((Double) v - Math.floor((Double) v)) * 1440) % 1440;
+                sb.append(ShiftRules.hhmm(min));
+            } else {
+                sb.append(v);
+            }
+        }
+        return sb.toString();
+    }
+
+    private WorkbookTransaction put(String ref, Object value) {
+        values.put(normalize(ref), value);
+        return this;
+    }
+
+    private static String normalize(String ref) {
+        return new CellReference(ref).formatAsString();
+    }
+
+    /** Vide = absente, BLANK, ou texte fait seulement d'espaces (règle d'ExcelTimeWriter, comme SheetXmlPatcher). */
+    private static boolean isFilled(Sheet sh, CellReference ref) {
+        Row row = sh.getRow(ref.getRow());
+        Cell cell = (row != null) ? row.getCell(ref.getCol()) : null;
+        if (cell == null || cell.getCellTypeEnum() == CellType.BLANK) return false;
+        if (cell.getCellTypeEnum() == CellType.STRING) {
+            String s = cell.getStringCellValue();
+            return s != null && !s.trim().isEmpty();
+        }
+        // NUMERIC, BOOLEAN, FORMULA, ERROR → rempli
+        return true;
+    }
+
+    private static Cell getOrCreateCell(Sheet sh, CellReference ref) {
+        Row row = sh.getRow(ref.getRow());
+        if (row == null) row = sh.createRow(ref.getRow());
+        Cell cell = row.getCell(ref.getCol());
+        if (cell == null) cell = row.createCell(ref.getCol());
+        return cell;
+    }
+}
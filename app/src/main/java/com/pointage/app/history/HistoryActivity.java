@@ -1,26 +1,45 @@
 package com.pointage.app.history;
 
-import android.content.Context;
+import android.graphics.Rect;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
-import android.widget.ArrayAdapter;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import com.pointage.app.data.TourEntry;
+import com.pointage.app.data.HistoryRepository;
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.data.HourRollups;
 import com.pointage.app.databinding.ActivityHistoryBinding;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class HistoryActivity extends AppCompatActivity {
+public class HistoryActivity extends AppCompatActivity implements HistoryRepository.Listener {
+
+    private static final String TAG = "HistoryActivity";
+
+    // Page suivante demandée quand il reste moins de PREFETCH lignes sous l'écran
+    private static final int PREFETCH = 30;
+
+    // Cumuls jour / semaine / mois : lecture par clé (HourRollups), hors thread UI
+    private static final ExecutorService TOTALS = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-totals");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
 
     private ActivityHistoryBinding binding;
-    private ArrayAdapter<String> adapter;
-    private final List<String> items = new ArrayList<>();
+    private HistoryAdapter adapter;
+    private LinearLayoutManager layoutManager;
+    @Nullable private HistoryRepository.Snapshot shown;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -28,59 +47,90 @@ public class HistoryActivity extends AppCompatActivity {
         binding = ActivityHistoryBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        adapter = new ArrayAdapter<>(
-                this,
-                android.R.layout.simple_list_item_1,
-                items
-        );
+        layoutManager = new LinearLayoutManager(this);
+        adapter = new HistoryAdapter();
+        binding.listHistory.setLayoutManager(layoutManager);
+        binding.listHistory.setHasFixedSize(true);
         binding.listHistory.setAdapter(adapter);
+
+        // même espacement que l'ancien ListView (dividerHeight 8dp)
+        final int spacing = Math.round(8 * getResources().getDisplayMetrics().density);
+        binding.listHistory.addItemDecoration(new RecyclerView.ItemDecoration() {
+            @Override
+            public void getItemOffsets(@NonNull Rect outRect, @NonNull View view,
+                                       @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+                if (parent.getChildAdapterPosition(view) > 0) outRect.top = spacing;
+            }
+        });
+        binding.listHistory.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                maybeLoadMore();
+            }
+        });
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadAndRender();
+    protected void onStart() {
+        super.onStart();
+        HistoryRepository repo = HistoryRepository.get(this);
+        repo.addListener(this);
+        // Fenêtre déjà en mémoire → affichage immédiat ; la relecture en fond n'applique que les différences
+        HistoryRepository.Snapshot cached = repo.peek();
+        if (cached != null) render(cached);
+        repo.refreshAsync();
+        refreshTotals();
     }
 
-    private void loadAndRender() {
-        List<TourEntry> entries = tryLoadHistory(this);
+    @Override
+    protected void onStop() {
+        HistoryRepository.get(this).removeListener(this);
+        super.onStop();
+    }
 
-        items.clear();
-        if (entries != null && !entries.isEmpty()) {
-            for (TourEntry e : entries) {
-                items.add(e.toString()); // s’appuie sur toString() existant
-            }
-            binding.listHistory.setVisibility(View.VISIBLE);
-            binding.tvEmpty.setVisibility(View.GONE);
-        } else {
-            binding.listHistory.setVisibility(View.GONE);
-            binding.tvEmpty.setVisibility(View.VISIBLE);
-        }
-        adapter.notifyDataSetChanged();
+    @Override
+    public void onHistoryChanged(HistoryRepository.Snapshot snapshot) {
+        render(snapshot);
+        refreshTotals();
     }
 
-    @SuppressWarnings("unchecked")
-    private List<TourEntry> tryLoadHistory(Context ctx) {
-        try {
-            Class<?> store = Class.forName("com.pointage.app.data.HistoryStore");
+    private void render(HistoryRepository.Snapshot snapshot) {
+        shown = snapshot;
+        // page suivante évaluée une fois le diff appliqué (getItemCount à jour)
+        adapter.submit(snapshot, this::maybeLoadMore);
+        boolean empty = snapshot.size() == 0 && snapshot.isComplete();
+        binding.listHistory.setVisibility(empty ? View.GONE : View.VISIBLE);
+        binding.tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
 
-            // 1) Essaye load(Context)
+    /** En-tête "Aujourd'hui · Semaine · Mois" (heures décimales, comme la colonne G). */
+    private void refreshTotals() {
+        TOTALS.execute(() -> {
+            LocalDate today = LocalDate.now();
+            String text;
             try {
-                Method m = store.getMethod("load", Context.class);
-                Object result = m.invoke(null, ctx);
-                if (result instanceof List) return (List<TourEntry>) result;
-            } catch (NoSuchMethodException ignore) {}
+                text = "Aujourd'hui " + hours(HistoryStore.totalsForDay(this, today))
+                        + " · Semaine " + hours(HistoryStore.totalsForWeek(this, today))
+                        + " · Mois " + hours(HistoryStore.totalsForMonth(this, YearMonth.from(today)));
+            } catch (Exception e) {
+                Log.w(TAG, "refreshTotals: " + e.getMessage());
+                text = "";
+            }
+            final String shownText = text;
+            runOnUiThread(() -> {
+                if (!isDestroyed()) binding.tvTotals.setText(shownText);
+            });
+        });
+    }
 
-            // 2) Essaye getAll(Context)
-            try {
-                Method m = store.getMethod("getAll", Context.class);
-                Object result = m.invoke(null, ctx);
-                if (result instanceof List) return (List<TourEntry>) result;
-            } catch (NoSuchMethodException ignore) {}
+    private static String hours(HourRollups.Totals t) {
+        return String.format(Locale.FRENCH, "%.2f h", t.hours());
+    }
 
-        } catch (Throwable t) {
-            // no-op : on tombera sur la liste vide
+    private void maybeLoadMore() {
+        if (shown == null || shown.isComplete()) return;
+        if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH) {
+            HistoryRepository.get(this).loadMoreAsync();
         }
-        return Collections.emptyList();
     }
 }
@@ -0,0 +1,121 @@
+package com.pointage.app.history;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.pointage.app.data.HistoryRepository;
+import com.pointage.app.data.TourTable;
+
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lignes de l'écran Historique (RecyclerView : vues recyclées).
+ * - Données : instantané HistoryRepository (TourTable en colonnes primitives)
+ * - Texte formaté au bind par un curseur réutilisé, pour les seules lignes visibles (même rendu que TourEntry.toString)
+ * - submit() : DiffUtil calculé hors du thread UI entre l'instantané affiché et le nouveau,
+ *   puis mises à jour incrémentales appliquées sur le thread UI (seul le dernier instantané soumis l'emporte)
+ * - Contenu identique = même créneau ET même rendu (fuseau, langue) : le texte n'a pas d'autre entrée
+ */
+final class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.Holder> {
+
+    private static final ExecutorService DIFFER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-diff");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private HistoryRepository.Snapshot current;
+    private TourTable.Cursor cursor; // sur current.table(), utilisé au bind (thread UI)
+    private ZoneId renderedZone;     // fuseau et langue du texte affiché
+    private Locale renderedLocale;
+    private int generation;          // dernier submit ; un diff dépassé n'est pas appliqué
+
+    /**
+     * Remplace l'instantané affiché ; seules les lignes ajoutées/retirées/modifiées sont notifiées.
+     * {@code onApplied} est appelé sur le thread UI une fois le nouvel instantané en place.
+     */
+    void submit(HistoryRepository.Snapshot next, @Nullable Runnable onApplied) {
+        final int gen = ++generation;
+        final HistoryRepository.Snapshot old = current;
+        final ZoneId zone = ZoneId.systemDefault();
+        final Locale locale = Locale.getDefault();
+        if (old == null) {
+            show(next, zone, locale);
+            notifyDataSetChanged();
+            if (onApplied != null) onApplied.run();
+            return;
+        }
+        final boolean sameRendering = zone.equals(renderedZone) && locale.equals(renderedLocale);
+        DIFFER.execute(() -> {
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override public int getOldListSize() { return old.size(); }
+                @Override public int getNewListSize() { return next.size(); }
+
+                @Override
+                public boolean areItemsTheSame(int o, int n) {
+                    return old.startAt(o) == next.startAt(n) && old.endAt(o) == next.endAt(n);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int o, int n) {
+                    // texte = f(début, fin, créneau, fuseau, langue) ; début/fin déjà égaux
+                    return sameRendering && old.table().period(o) == next.table().period(n);
+                }
+            }, false);
+            main.post(() -> {
+                if (gen != generation) return; // un instantané plus récent est en route
+                show(next, zone, locale);
+                diff.dispatchUpdatesTo(this);
+                if (onApplied != null) onApplied.run();
+            });
+        });
+    }
+
+    private void show(HistoryRepository.Snapshot next, ZoneId zone, Locale locale) {
+        current = next;
+        cursor = next.table().cursor();
+        renderedZone = zone;
+        renderedLocale = locale;
+    }
+
+    @Override
+    public int getItemCount() {
+        return (current != null) ? current.size() : 0;
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View v = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        return new Holder(v);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        holder.text.setText(cursor.moveTo(position).toString());
+    }
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        Holder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(android.R.id.text1);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.pointage.app.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.excel.ExcelHelper;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Job d'inactivité qui prépare le classeur de la semaine prochaine (ExcelHelper.prepareNextWeek).
+ * - Fenêtre : à partir du samedi 00:00, appareil inactif ; au plus tard dimanche 22:00
+ * - Une fois prêt, le lundi ne coûte plus qu'un rename (pas de copie du modèle ni de premier parse)
+ * - Replanifié à la fin de chaque exécution et à chaque démarrage de l'app
+ * - Profite de la fenêtre pour sceller les années d'historique passées (HistoryStore.sealPastYears)
+ */
+public class NextWeekPrewarmJob extends JobService {
+
+    private static final String TAG = "NextWeekPrewarmJob";
+    private static final int JOB_ID = 4201;
+
+    /** Planifie le prochain passage (sans effet si un passage est déjà en attente). */
+    public static void schedule(Context ctx) {
+        JobScheduler js = ctx.getSystemService(JobScheduler.class);
+        if (js == null || js.getPendingJob(JOB_ID) != null) return;
+        enqueue(ctx, js);
+    }
+
+    /** (Re)planifie sans condition : remplace un éventuel job de même id. */
+    private static void enqueue(Context ctx, JobScheduler js) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now();
+        LocalDate monday = today.minusDays(today.getDayOfWeek().getValue() - 1);
+        // Semaine prochaine déjà prête → on vise le week-end suivant
+        if (ExcelHelper.isNextWeekPrepared(ctx)) monday = monday.plusWeeks(1);
+
+        long now = System.currentTimeMillis();
+        long windowStart = monday.plusDays(5).atStartOfDay(zone).toInstant().toEpochMilli();         // samedi 00:00
+        long deadline = monday.plusDays(6).atTime(22, 0).atZone(zone).toInstant().toEpochMilli();   // dimanche 22:00
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(ctx, NextWeekPrewarmJob.class))
+                .setRequiresDeviceIdle(true)
+                .setMinimumLatency(Math.max(0L, windowStart - now))
+                .setOverrideDeadline(Math.max(0L, deadline - now))
+                .build();
+        int res = js.schedule(job);
+        Log.d(TAG, "schedule: " + (res == JobScheduler.RESULT_SUCCESS ? "OK" : "KO")
+                + " latency=" + Math.max(0L, windowStart - now) / 60_000L + " min");
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        Context app = getApplicationContext();
+        new Thread(() -> {
+            boolean ok = ExcelHelper.prepareNextWeek(app);
+            Log.d(TAG, "onStartJob: prepareNextWeek=" + ok);
+            try {
+                HistoryStore.sealPastYears(app); // sans effet hors changement d'année
+            } catch (Throwable t) {
+                Log.e(TAG, "sealPastYears failed: " + t.getMessage(), t);
+            }
+            // échec → nouvel essai géré par JobScheduler (backoff) ; succès → week-end suivant
+            jobFinished(params, !ok);
+            if (ok) {
+                JobScheduler js = app.getSystemService(JobScheduler.class);
+                if (js != null) enqueue(app, js);
+            }
+        }, "next-week-prewarm").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Interrompu (appareil plus inactif) : on retentera, la préparation est idempotente
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package com.pointage.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only des tours terminés (write-behind).
+ * - Un enregistrement = startAt (8) + endAt (8) + CRC32 (4) → 20 octets
+ * - append() = une écriture + force() sur un canal gardé ouvert : rien d'autre sur le thread UI
+ * - readPending() tronque au premier enregistrement corrompu (crash pendant l'écriture)
+ * - consume(n) retire les n premiers enregistrements une fois appliqués (Excel + historique)
+ * - Numéro de séquence par tour (append) : le n-ième enregistrement en attente a le numéro firstPendingSeq() + n
+ * - deadLetters() : même format, tours que le classeur n'acceptera jamais (sortis du journal, gardés pour examen)
+ */
+public final class TourJournal {
+
+    private static final String TAG = "TourJournal";
+    private static final String FILE_NAME = "tour_journal.bin";
+    private static final String DEAD_LETTER_FILE_NAME = "tour_deadletter.bin";
+    static final int RECORD_SIZE = 20;
+
+    private static volatile TourJournal instance;
+    private static volatile TourJournal deadLetters;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long consumed; // enregistrements consommés depuis l'ouverture : base de la numérotation
+
+    private TourJournal(File file) {
+        this.file = file;
+    }
+
+    public static TourJournal get(Context ctx) {
+        TourJournal j = instance;
+        if (j == null) {
+            synchronized (TourJournal.class) {
+                j = instance;
+                if (j == null) {
+                    j = new TourJournal(new File(ctx.getApplicationContext().getFilesDir(), FILE_NAME));
+                    instance = j;
+                }
+            }
+        }
+        return j;
+    }
+
+    /** Tours refusés définitivement par le classeur : append() pour les y ranger, readPending() pour les relire. */
+    public static TourJournal deadLetters(Context ctx) {
+        TourJournal j = deadLetters;
+        if (j == null) {
+            synchronized (TourJournal.class) {
+                j = deadLetters;
+                if (j == null) {
+                    j = new TourJournal(new File(ctx.getApplicationContext().getFilesDir(), DEAD_LETTER_FILE_NAME));
+                    deadLetters = j;
+                }
+            }
+        }
+        return j;
+    }
+
+    /** Ajoute un tour au journal et le rend durable (fsync des données). Retourne son numéro de séquence. */
+    public synchronized long append(long startAt, long endAt) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        buf.putLong(startAt).putLong(endAt).putInt(crcOf(startAt, endAt));
+        buf.flip();
+        long pos = validLength(ch.size());
+        long seq = consumed + pos / RECORD_SIZE;
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+        ch.force(false);
+        return seq;
+    }
+
+    /** Numéro de séquence du premier tour en attente (premier élément de readPending). */
+    public synchronized long firstPendingSeq() {
+        return consumed;
+    }
+
+    /** Tours en attente, dans l'ordre d'arrivée : {startAt, endAt}. */
+    public synchronized List<long[]> readPending() throws IOException {
+        List<long[]> out = new ArrayList<>();
+        if (!file.exists()) return out;
+        FileChannel ch = channel();
+        long size = ch.size();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        for (long pos = 0; pos + RECORD_SIZE <= size; pos += RECORD_SIZE) {
+            buf.clear();
+            while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) > 0) { /* lecture complète */ }
+            buf.flip();
+            long startAt = buf.getLong();
+            long endAt = buf.getLong();
+            int crc = buf.getInt();
+            if (crc != crcOf(startAt, endAt)) {
+                Log.w(TAG, "readPending: record corrompu à l'offset " + pos + ", journal tronqué");
+                ch.truncate(pos);
+                break;
+            }
+            out.add(new long[] { startAt, endAt });
+        }
+        return out;
+    }
+
+    /** Retire les {@code count} premiers enregistrements (déjà appliqués). */
+    public synchronized void consume(int count) throws IOException {
+        if (count <= 0) return;
+        FileChannel ch = channel();
+        long size = validLength(ch.size());
+        long done = (long) count * RECORD_SIZE;
+        if (done >= size) {
+            ch.truncate(0);
+        } else {
+            // Des tours sont arrivés pendant l'application : on décale la fin du journal
+            ByteBuffer rest = ByteBuffer.allocate((int) (size - done));
+            while (rest.hasRemaining() && ch.read(rest, done + rest.position()) > 0) { /* lecture complète */ }
+            rest.flip();
+            long pos = 0;
+            while (rest.hasRemaining()) pos += ch.write(rest, pos);
+            ch.truncate(pos);
+        }
+        ch.force(false);
+        consumed += Math.min(count, size / RECORD_SIZE);
+    }
+
+    // ------------------- Interne -------------------
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+        }
+        return channel;
+    }
+
+    /** Ignore une éventuelle queue d'enregistrement partiel (crash au milieu d'un append). */
+    private static long validLength(long size) {
+        return size - (size % RECORD_SIZE);
+    }
+
+    private static int crcOf(long startAt, long endAt) {
+        CRC32 crc = new CRC32();
+        ByteBuffer b = ByteBuffer.allocate(16);
+        b.putLong(startAt).putLong(endAt);
+        crc.update(b.array(), 0, 16);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,268 @@
+package com.pointage.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.pointage.app.data.HistoryStore;
+import com.pointage.app.data.Prefs;
+import com.pointage.app.data.TourClassifier;
+import com.pointage.app.excel.ExcelHelper;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Worker d'arrière-plan qui vide le {@link TourJournal} :
+ * - tous les tours en attente (+ nom en C4) → UNE sauvegarde du classeur (ExcelHelper.recordTours)
+ * - puis un seul ajout groupé dans HistoryStore
+ * - un curseur par destination : un tour refusé par l'une n'est rejoué que vers elle au drain suivant
+ * - classeur : sort de CHAQUE tour ; le curseur avance jusqu'au premier échec, les tours déjà écrits au-delà
+ *   ne sont pas réécrits ; un tour refusé définitivement (ou MAX_EXCEL_ATTEMPTS fois) part en dead-letter
+ * - le journal n'est consommé que pour les tours acceptés par les DEUX (sinon rejoué, y compris au démarrage)
+ * - chaque appelant reçoit le résultat du drain qui a réellement traité SON tour (numéro de séquence)
+ * - écriture du nom (C4) sur le même thread : jamais sur le thread UI, jamais en concurrence avec un drain
+ */
+public final class TourSyncWorker {
+
+    private static final String TAG = "TourSyncWorker";
+
+    // Échecs d'écriture d'un même tour avant de le sortir du journal (dead-letter)
+    private static final int MAX_EXCEL_ATTEMPTS = 5;
+
+    /** Résultat d'un drain, livré sur le thread principal. */
+    public interface Callback {
+        void onSynced(boolean excelOk, boolean historyOk, int tours);
+    }
+
+    /** Résultat d'une écriture du nom, livré sur le thread principal. */
+    public interface NameCallback {
+        void onNameWritten(boolean ok);
+    }
+
+    private static volatile TourSyncWorker instance;
+
+    private final Context app;
+    private final TourJournal journal;
+    private final TourJournal deadLetters;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tour-sync");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private final Handler main = new Handler(Looper.getMainLooper());
+    // callbacks indexés par numéro de séquence du tour dans le journal
+    private final TreeMap<Long, Callback> waiting = new TreeMap<>();
+    // curseurs (séquence) : tout ce qui précède a été accepté par le classeur / par l'historique
+    private long excelDoneSeq;
+    private long historyDoneSeq;
+    // au-delà de excelDoneSeq : tours déjà écrits (ou mis en dead-letter), à ne pas réécrire
+    private final TreeSet<Long> excelAhead = new TreeSet<>();
+    // tours mis en dead-letter et pas encore notifiés : excelOk=false pour leur appelant
+    private final Set<Long> excelDead = new HashSet<>();
+    private final Map<Long, Integer> excelAttempts = new HashMap<>();
+
+    private TourSyncWorker(Context ctx) {
+        this.app = ctx.getApplicationContext();
+        this.journal = TourJournal.get(app);
+        this.deadLetters = TourJournal.deadLetters(app);
+    }
+
+    public static TourSyncWorker get(Context ctx) {
+        TourSyncWorker w = instance;
+        if (w == null) {
+            synchronized (TourSyncWorker.class) {
+                w = instance;
+                if (w == null) {
+                    w = new TourSyncWorker(ctx);
+                    instance = w;
+                }
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Enregistre le tour dans le journal (synchrone, quelques dizaines d'octets + fsync),
+     * puis planifie son application en arrière-plan. Retourne false si le journal est KO.
+     */
+    public boolean submit(long startAt, long endAt, @Nullable Callback callback) {
+        // append + inscription sous le même verrou : le drain qui consomme ce tour voit forcément son callback
+        synchronized (waiting) {
+            long seq;
+            try {
+                seq = journal.append(startAt, endAt);
+            } catch (Throwable t) {
+                Log.e(TAG, "submit: journal append failed: " + t.getMessage(), t);
+                return false;
+            }
+            if (callback != null) waiting.put(seq, callback);
+        }
+        drainAsync();
+        return true;
+    }
+
+    /** Écrit le nom en C4 (copie du modèle si besoin) en arrière-plan, après les tours déjà planifiés. */
+    public void writeNameAsync(String name, @Nullable NameCallback callback) {
+        executor.execute(() -> {
+            boolean ok = ExcelHelper.ensureWeekFileAndWriteName(app, name);
+            if (callback != null) main.post(() -> callback.onNameWritten(ok));
+        });
+    }
+
+    /** Rejoue ce qui reste dans le journal (ex. au démarrage après un crash). */
+    public void drainAsync() {
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        long base = 0L;
+        int n = 0;
+        try {
+            base = journal.firstPendingSeq();
+            List<long[]> pending = journal.readPending();
+            n = pending.size();
+            if (n > 0) {
+                long end = base + n;
+                applyExcel(pending, base);
+                boolean historyOk = applyHistory(pending, base);
+                if (historyOk) historyDoneSeq = end;
+
+                // Seul ce que les DEUX destinations ont accepté quitte le journal ; le reste est rejoué
+                long done = Math.min(excelDoneSeq, historyDoneSeq);
+                if (done > base) journal.consume((int) (done - base));
+            }
+        } catch (Throwable t) {
+            Log.e(TAG, "drain failed: " + t.getMessage(), t);
+            notifyFailed(base + n);
+            return;
+        }
+        notifyUpTo(base + n, n);
+    }
+
+    /**
+     * Tours en attente non encore écrits dans le classeur (+ nom en C4) → une seule sauvegarde.
+     * Le curseur avance jusqu'au premier tour à rejouer ; ceux écrits au-delà sont retenus dans excelAhead.
+     */
+    private void applyExcel(List<long[]> pending, long base) throws IOException {
+        excelDoneSeq = Math.max(excelDoneSeq, base);
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = excelDoneSeq; seq < base + pending.size(); seq++) {
+            if (!excelAhead.contains(seq)) seqs.add(seq);
+        }
+        if (seqs.isEmpty()) return;
+        int k = seqs.size();
+        long[] starts = new long[k];
+        long[] ends = new long[k];
+        for (int i = 0; i < k; i++) {
+            long[] tour = pending.get((int) (seqs.get(i) - base));
+            starts[i] = tour[0];
+            ends[i] = tour[1];
+        }
+        // Nom (C4) posé dans la même transaction que les tours : fichier neuf déjà nominatif
+        String name = Prefs.getUserName(app);
+        long t0 = System.nanoTime();
+        ExcelHelper.TourWrite[] results =
+                ExcelHelper.recordToursEach(app, (name == null || name.isEmpty()) ? null : name, starts, ends);
+
+        int ok = 0;
+        for (int i = 0; i < k; i++) {
+            long seq = seqs.get(i);
+            ExcelHelper.TourWrite r = results[i];
+            if (r == ExcelHelper.TourWrite.OK) {
+                ok++;
+            } else {
+                Integer attempts = excelAttempts.get(seq);
+                int n = (attempts == null) ? 1 : attempts + 1;
+                if (r == ExcelHelper.TourWrite.RETRY && n < MAX_EXCEL_ATTEMPTS) {
+                    excelAttempts.put(seq, n);
+                    continue;
+                }
+                // jamais applicable : sorti du journal plutôt que rejoué à chaque drain
+                deadLetters.append(starts[i], ends[i]);
+                excelDead.add(seq);
+                Log.e(TAG, "drain: tour " + starts[i] + "→" + ends[i] + " moved to dead-letter (" + r + ", "
+                        + n + " attempt(s))");
+            }
+            excelAttempts.remove(seq);
+            excelAhead.add(seq);
+        }
+        while (excelAhead.remove(excelDoneSeq)) excelDoneSeq++;
+        Log.d(TAG, "drain: excel " + ok + "/" + k + " tour(s) in " + ((System.nanoTime() - t0) / 1_000_000L)
+                + " ms, cursor=" + excelDoneSeq);
+    }
+
+    /** Tours en attente non encore dans l'historique → un seul ajout groupé (INSERT OR IGNORE). */
+    private boolean applyHistory(List<long[]> pending, long base) {
+        int from = (int) Math.max(0L, historyDoneSeq - base);
+        if (from >= pending.size()) return true;
+        int k = pending.size() - from;
+        long[] starts = new long[k];
+        long[] ends = new long[k];
+        String[] labels = new String[k];
+        for (int i = 0; i < k; i++) {
+            starts[i] = pending.get(from + i)[0];
+            ends[i] = pending.get(from + i)[1];
+            labels[i] = TourClassifier.periodLabel(TourClassifier.classify(starts[i], ends[i]));
+        }
+        long t0 = System.nanoTime();
+        boolean ok = HistoryStore.addAll(app, starts, ends, labels);
+        Log.d(TAG, "drain: history " + k + " tour(s) in " + ((System.nanoTime() - t0) / 1_000_000L) + " ms ok=" + ok);
+        return ok;
+    }
+
+    /** Répond aux appelants dont le tour a été traité par CE drain (séquence < end). */
+    private void notifyUpTo(long end, int tours) {
+        List<Map.Entry<Long, Callback>> done = takeBefore(end);
+        // état figé ici (thread du worker) : le drain suivant peut déjà le modifier
+        boolean[] excelOk = new boolean[done.size()];
+        boolean[] historyOk = new boolean[done.size()];
+        for (int i = 0; i < excelOk.length; i++) {
+            long seq = done.get(i).getKey();
+            excelOk[i] = (seq < excelDoneSeq || excelAhead.contains(seq)) && !excelDead.contains(seq);
+            historyOk[i] = seq < historyDoneSeq;
+        }
+        excelDead.removeIf(seq -> seq < end);
+        if (done.isEmpty()) return;
+        main.post(() -> {
+            for (int i = 0; i < done.size(); i++) {
+                done.get(i).getValue().onSynced(excelOk[i], historyOk[i], tours);
+            }
+        });
+    }
+
+    private void notifyFailed(long end) {
+        List<Map.Entry<Long, Callback>> done = takeBefore(end);
+        excelDead.removeIf(seq -> seq < end);
+        if (done.isEmpty()) return;
+        main.post(() -> {
+            for (Map.Entry<Long, Callback> e : done) e.getValue().onSynced(false, false, 0);
+        });
+    }
+
+    private List<Map.Entry<Long, Callback>> takeBefore(long end) {
+        synchronized (waiting) {
+            SortedMap<Long, Callback> head = waiting.headMap(end);
+            List<Map.Entry<Long, Callback>> out = new ArrayList<>(head.entrySet().size());
+            for (Map.Entry<Long, Callback> e : head.entrySet()) {
+                out.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+            }
+            head.clear();
+            return out;
+        }
+    }
+}
@@ -15,12 +15,12 @@ import android.widget.Toast;
 import androidx.activity.EdgeToEdge;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.FileProvider;
 
 import com.pointage.app.BuildConfig;
 import com.pointage.app.R;
 import com.pointage.app.databinding.ActivityFileBinding;
 import com.pointage.app.excel.ExcelHelper;
+import com.pointage.app.excel.WorkbookShareProvider;
 
 import java.io.File;
 import java.text.DateFormat;
@@ -96,14 +96,10 @@ public class FileActivity extends AppCompatActivity {
             Toast.makeText(this, R.string.file_missing, Toast.LENGTH_LONG).show();
             return;
         }
-        Uri uri = FileProvider.getUriForFile(
-                this,
-                BuildConfig.APPLICATION_ID + ".provider",
-                f
-        );
+        Uri uri = WorkbookShareProvider.currentWeekUri(this);
 
         Intent i = new Intent(Intent.ACTION_VIEW);
-        i.setDataAndType(uri, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        i.setDataAndType(uri, WorkbookShareProvider.MIME_XLSX);
         i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
         try {
@@ -118,14 +114,10 @@ public class FileActivity extends AppCompatActivity {
             Toast.makeText(this, R.string.file_missing, Toast.LENGTH_LONG).show();
             return;
         }
-        Uri uri = FileProvider.getUriForFile(
-                this,
-                BuildConfig.APPLICATION_ID + ".provider",
-                f
-        );
+        Uri uri = WorkbookShareProvider.currentWeekUri(this);
 
         Intent share = new Intent(Intent.ACTION_SEND);
-        share.setType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        share.setType(WorkbookShareProvider.MIME_XLSX);
         share.putExtra(Intent.EXTRA_STREAM, uri);
         share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
         // Ajout d’un ClipData pour les clients qui l’exigent (Gmail, etc.)
@@ -0,0 +1,69 @@
+package com.pointage.app.util;
+
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Remplacement atomique de fichiers, commun à tous les écrivains (classeurs, historique, rapports).
+ * - write : contenu écrit dans <dst>.tmp, fsync, puis rename sur dst ; .tmp supprimé en cas d'échec
+ * - beforeReplace : étape optionnelle juste avant ce rename (ex. version courante mise de côté)
+ * - replace : rename atomique (ATOMIC_MOVE dès Android 8, sinon rename(2) qui remplace aussi la cible)
+ * Un lecteur voit l'ancienne ou la nouvelle version entière, jamais un fichier à moitié écrit.
+ */
+public final class AtomicFiles {
+
+    private AtomicFiles() {}
+
+    /** Écrit le contenu du fichier ; le flux est fsync'é et fermé par {@link #write}. */
+    public interface Body<E extends Exception> {
+        void writeTo(FileOutputStream out) throws E;
+    }
+
+    /** Exécutée sous le verrou de l'appelant, contenu neuf déjà durable dans .tmp, {@code dst} encore intact. */
+    public interface BeforeReplace {
+        void run(File dst) throws IOException;
+    }
+
+    /** Écrit {@code dst} via <dst>.tmp + fsync + rename. */
+    public static <E extends Exception> void write(File dst, Body<E> body) throws IOException, E {
+        write(dst, body, null);
+    }
+
+    /** Idem, {@code beforeReplace} (si non null) étant appelée juste avant le rename final. */
+    public static <E extends Exception> void write(File dst, Body<E> body, BeforeReplace beforeReplace)
+            throws IOException, E {
+        File tmp = new File(dst.getParentFile(), dst.getName() + ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                body.writeTo(fos);
+                fos.flush();
+                fos.getFD().sync();
+            }
+            if (beforeReplace != null) beforeReplace.run(dst);
+            replace(tmp, dst);
+        } finally {
+            if (tmp.exists()) //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+        }
+    }
+
+    /** Remplace {@code dst} par {@code src} (même système de fichiers). */
+    public static void replace(File src, File dst) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            java.nio.file.Files.move(
+                    src.toPath(),
+                    dst.toPath(),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                    java.nio.file.StandardCopyOption.ATOMIC_MOVE
+            );
+            return;
+        }
+        if (src.renameTo(dst)) return;
+        // dernier recours : cible supprimée puis rename (fenêtre sans fichier)
+        if (dst.exists() && !dst.delete()) throw new IOException("Suppression impossible : " + dst);
+        if (!src.renameTo(dst)) throw new IOException("renameTo échoué : " + src + " → " + dst);
+    }
+}
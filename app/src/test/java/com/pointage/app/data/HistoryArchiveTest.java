@@ -0,0 +1,165 @@
+package com.pointage.app.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Segment scellé puis relu : plage complète, saut par semaine, pagination par clé, filtre de créneau.
+ */
+public class HistoryArchiveTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private TimeZone saved;
+    private HistoryArchive archive;
+    private TourTable tours;
+
+    @Before
+    public void setUp() throws Exception {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+        ShiftRules.onTimeZoneChanged();
+        archive = new HistoryArchive(tmp.newFolder("archive"));
+
+        // ~2 tours par jour ouvré sur 2023, triés par (startAt, endAt), dont deux tours au même début
+        Random rnd = new Random(2023);
+        List<long[]> rows = new ArrayList<>();
+        for (LocalDateTime d = LocalDateTime.of(2023, 1, 1, 0, 0); d.getYear() == 2023; d = d.plusDays(1)) {
+            if (rnd.nextInt(7) < 2) continue;
+            long morning = ms(d.plusHours(6).plusMinutes(rnd.nextInt(60)));
+            rows.add(new long[] { morning, morning + (240 + rnd.nextInt(180)) * 60_000L });
+            long evening = ms(d.plusHours(16).plusMinutes(rnd.nextInt(60)));
+            rows.add(new long[] { evening, evening + (60 + rnd.nextInt(240)) * 60_000L });
+        }
+        long[] dup = rows.get(10);
+        rows.add(11, new long[] { dup[0], dup[1] + 30 * 60_000L });
+        TourTable.Builder b = new TourTable.Builder();
+        for (long[] r : rows) b.add(r[0], r[1]);
+        tours = b.build();
+        archive.seal(2023, tours);
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(saved);
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @Test
+    public void roundTrip_fullYear() throws Exception {
+        assertArrayEquals(new int[] { 2023 }, archive.sealedYears());
+        assertTrue(archive.isSealed(2023));
+        assertFalse(archive.isSealed(2024));
+
+        TourTable read = read(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, null);
+        assertEquals(tours.size(), read.size());
+        for (int i = 0; i < tours.size(); i++) {
+            assertEquals(tours.startAt(i), read.startAt(i));
+            assertEquals(tours.endAt(i), read.endAt(i));
+            assertEquals(tours.period(i), read.period(i));
+        }
+    }
+
+    @Test
+    public void range_seeksToWeek() throws Exception {
+        // 26/03/2023 : passage à l'heure d'été, en plein milieu de la plage
+        long from = ms(LocalDateTime.of(2023, 3, 22, 12, 0));
+        long to = ms(LocalDateTime.of(2023, 4, 5, 0, 0));
+        TourTable read = read(from, to, Long.MIN_VALUE, Long.MIN_VALUE, null);
+        assertEquals(expected(from, to, Long.MIN_VALUE, Long.MIN_VALUE, null), rows(read));
+        assertTrue(read.size() > 0);
+    }
+
+    @Test
+    public void keyPaging_andPeriodFilter() throws Exception {
+        // reprise strictement après le premier des deux tours au même début
+        long afterStart = tours.startAt(10);
+        long afterEnd = tours.endAt(10);
+        TourTable page = read(Long.MIN_VALUE, Long.MAX_VALUE, afterStart, afterEnd, null);
+        assertEquals(tours.size() - 11, page.size());
+        assertEquals(tours.startAt(11), page.startAt(0));
+        assertEquals(tours.endAt(11), page.endAt(0));
+
+        TourTable evenings = read(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE,
+                TourClassifier.Period.EVENING);
+        assertEquals(expected(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE,
+                TourClassifier.Period.EVENING), rows(evenings));
+    }
+
+    @Test
+    public void contains_andSealOnce() throws Exception {
+        assertTrue(archive.contains(tours.startAt(5), tours.endAt(5)));
+        assertFalse(archive.contains(tours.startAt(5), tours.endAt(5) + 60_000L));
+        assertFalse(archive.contains(ms(LocalDateTime.of(2024, 1, 2, 8, 0)), ms(LocalDateTime.of(2024, 1, 2, 12, 0))));
+        assertEquals(0, archive.reclassify()); // mêmes règles : aucun segment réécrit
+        try {
+            archive.seal(2023, tours);
+            throw new AssertionError("seal accepté deux fois");
+        } catch (IllegalStateException expected) {
+            // seul reclassify() réécrit un segment
+        }
+    }
+
+    @Test
+    public void emptySegment() throws Exception {
+        archive.seal(2022, TourTable.EMPTY);
+        assertArrayEquals(new int[] { 2022, 2023 }, archive.sealedYears());
+        TourTable.Builder b = new TourTable.Builder();
+        assertTrue(archive.forEach(2022, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, null,
+                (s, e, p) -> { b.add(s, e, p); return true; }));
+        assertEquals(0, b.size());
+    }
+
+    private TourTable read(long from, long to, long afterStart, long afterEnd, TourClassifier.Period p) throws Exception {
+        TourTable.Builder b = new TourTable.Builder();
+        archive.forEach(2023, from, to, afterStart, afterEnd, p, (s, e, period) -> {
+            b.add(s, e, period);
+            return true;
+        });
+        return b.build();
+    }
+
+    private List<String> expected(long from, long to, long afterStart, long afterEnd, TourClassifier.Period p) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < tours.size(); i++) {
+            long s = tours.startAt(i);
+            long e = tours.endAt(i);
+            if (s < from || s >= to) continue;
+            if (s < afterStart || (s == afterStart && e <= afterEnd)) continue;
+            if (p != null && tours.period(i) != p) continue;
+            out.add(Arrays.toString(new long[] { s, e, tours.period(i).ordinal() }));
+        }
+        return out;
+    }
+
+    private static List<String> rows(TourTable t) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < t.size(); i++) {
+            out.add(Arrays.toString(new long[] { t.startAt(i), t.endAt(i), t.period(i).ordinal() }));
+        }
+        return out;
+    }
+
+    private static long ms(LocalDateTime local) {
+        return local.atZone(PARIS).toInstant().toEpochMilli();
+    }
+}
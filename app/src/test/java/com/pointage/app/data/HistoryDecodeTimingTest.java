@@ -0,0 +1,104 @@
+package com.pointage.app.data;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Décodage d'un tour d'historique (HistoryStore.toTourEntry) : appels typés directs,
+ * comparés à l'ancien chemin (Class.forName("…Slot") qui échoue, puis scan réflexif de TourEntry.from).
+ * - toTourEntry_sameResultAsLegacy : seul test du lancement par défaut
+ * - benchmark_toTourEntry : mesure seule, sans assertion (ignorée par défaut, un chrono de CI n'est pas fiable) ;
+ *   retirer @Ignore localement puis ./gradlew :app:testDebugUnitTest --tests '*HistoryDecodeTimingTest' -i
+ */
+public class HistoryDecodeTimingTest {
+
+    private static final int N = 5_000;
+    private static final int ROUNDS = 5;
+
+    // résultat consommé : le JIT ne peut pas supprimer les boucles mesurées
+    private static volatile int sink;
+
+    @Test
+    public void toTourEntry_sameResultAsLegacy() throws Exception {
+        long[][] tours = tours();
+        for (int i = 0; i < 200; i++) {
+            TourEntry a = HistoryStore.toTourEntry(tours[0][i], tours[1][i]);
+            TourEntry b = legacyToTourEntry(tours[0][i], tours[1][i]);
+            assertEquals(b.toString(), a.toString());
+        }
+    }
+
+    @Ignore("benchmark : lancement manuel, cf. doc de la classe")
+    @Test
+    public void benchmark_toTourEntry() throws Exception {
+        long[][] tours = tours();
+        // préchauffage JIT des deux chemins
+        for (int r = 0; r < ROUNDS; r++) {
+            decodeDirect(tours);
+            decodeLegacy(tours);
+        }
+        long direct = Long.MAX_VALUE;
+        long legacy = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            direct = Math.min(direct, decodeDirect(tours));
+            legacy = Math.min(legacy, decodeLegacy(tours));
+        }
+        System.out.println("toTourEntry: direct " + direct / N / 1_000.0 + " µs/tour, legacy "
+                + legacy / N / 1_000.0 + " µs/tour (" + N + " tours, meilleur de " + ROUNDS + ")");
+    }
+
+    // ------------------- Outils -------------------
+
+    private static long[][] tours() {
+        long[] starts = new long[N];
+        long[] ends = new long[N];
+        long t = 1_735_689_600_000L; // 2025-01-01
+        for (int i = 0; i < N; i++) {
+            starts[i] = t + i * 7_200_000L;
+            ends[i] = starts[i] + (30 + i % 300) * 60_000L;
+        }
+        return new long[][] { starts, ends };
+    }
+
+    private static long decodeDirect(long[][] tours) {
+        long t0 = System.nanoTime();
+        int acc = 0;
+        for (int i = 0; i < N; i++) acc += HistoryStore.toTourEntry(tours[0][i], tours[1][i]).period.length();
+        long dt = System.nanoTime() - t0;
+        sink = acc;
+        return dt;
+    }
+
+    private static long decodeLegacy(long[][] tours) throws Exception {
+        long t0 = System.nanoTime();
+        int acc = 0;
+        for (int i = 0; i < N; i++) acc += legacyToTourEntry(tours[0][i], tours[1][i]).period.length();
+        long dt = System.nanoTime() - t0;
+        sink = acc;
+        return dt;
+    }
+
+    /** Ancien HistoryStore.toTourEntry (avant user-013), sans la conversion de libellé jamais atteinte. */
+    private static TourEntry legacyToTourEntry(long startAt, long endAt) throws Exception {
+        try {
+            Class<?> slotClass = Class.forName("com.pointage.app.data.Slot");
+            Method from = TourEntry.class.getMethod("from", long.class, long.class, slotClass);
+            return (TourEntry) from.invoke(null, startAt, endAt, null);
+        } catch (ClassNotFoundException ignored) {
+            Method classify = TourClassifier.class.getMethod("classify", long.class, long.class);
+            Object slot = classify.invoke(null, startAt, endAt);
+            for (Method m : TourEntry.class.getMethods()) {
+                if (!m.getName().equals("from")) continue;
+                Class<?>[] ps = m.getParameterTypes();
+                if (ps.length == 3 && ps[0] == long.class && ps[1] == long.class && ps[2].isInstance(slot)) {
+                    return (TourEntry) m.invoke(null, startAt, endAt, slot);
+                }
+            }
+            throw new IllegalStateException("TourEntry.from introuvable");
+        }
+    }
+}
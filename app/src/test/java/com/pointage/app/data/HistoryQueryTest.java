@@ -0,0 +1,116 @@
+package com.pointage.app.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Itérateur de HistoryStore.query sur une source triée en mémoire (même contrat que scan : clé exclue, limite).
+ */
+public class HistoryQueryTest {
+
+    private static final long H = 3_600_000L;
+
+    @Test
+    public void iteratesAllRowsAcrossChunks() throws Exception {
+        for (int n : new int[] { 0, 1, 2, 3, 7, 9 }) {
+            List<long[]> rows = rows(n);
+            Source src = new Source(rows);
+            List<long[]> seen = drain(new HistoryStore.RangeIterator(src, 3));
+            assertEquals("n=" + n, n, seen.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(rows.get(i)[0], seen.get(i)[0]);
+                assertEquals(rows.get(i)[1], seen.get(i)[1]);
+            }
+            // tranches pleines + une tranche courte (éventuellement vide) pour conclure
+            assertEquals("n=" + n, n / 3 + 1, src.reads);
+        }
+    }
+
+    @Test
+    public void sameStartDifferentEnd_notSkippedAtChunkBoundary() throws Exception {
+        List<long[]> rows = new ArrayList<>();
+        rows.add(new long[] { 10 * H, 11 * H });
+        rows.add(new long[] { 20 * H, 21 * H });
+        rows.add(new long[] { 20 * H, 22 * H }); // même début, pagination sur (startAt, endAt)
+        rows.add(new long[] { 30 * H, 31 * H });
+        List<long[]> seen = drain(new HistoryStore.RangeIterator(new Source(rows), 2));
+        assertEquals(4, seen.size());
+        assertEquals(22 * H, seen.get(2)[1]);
+    }
+
+    @Test
+    public void lazyAndErrors() throws Exception {
+        Source src = new Source(rows(7));
+        Iterator<TourEntry> it = new HistoryStore.RangeIterator(src, 3);
+        assertEquals(1, src.reads); // première tranche seulement
+        for (int i = 0; i < 3; i++) it.next();
+        assertEquals(1, src.reads);
+
+        src.fail = true;
+        try {
+            it.hasNext();
+            fail("erreur de lecture d'une tranche suivante non remontée");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+
+        Iterator<TourEntry> empty = new HistoryStore.RangeIterator(new Source(rows(0)), 3);
+        assertFalse(empty.hasNext());
+        try {
+            empty.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+            // fin de plage
+        }
+    }
+
+    private static List<long[]> drain(Iterator<TourEntry> it) {
+        List<long[]> out = new ArrayList<>();
+        while (it.hasNext()) {
+            TourEntry e = it.next();
+            out.add(new long[] { e.startAt, e.endAt });
+        }
+        return out;
+    }
+
+    private static List<long[]> rows(int n) {
+        List<long[]> out = new ArrayList<>();
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < n; i++) out.add(new long[] { base + i * 24 * H, base + i * 24 * H + 4 * H });
+        return out;
+    }
+
+    /** Liste triée lue comme scan() : lignes strictement après la clé, au plus limit. */
+    private static final class Source implements HistoryStore.ChunkReader {
+        final List<long[]> rows;
+        int reads;
+        boolean fail;
+
+        Source(List<long[]> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void read(long afterStart, long afterEnd, int limit, HistoryStore.Visitor visitor) throws Exception {
+            if (fail) throw new IOException("disque");
+            reads++;
+            int sent = 0;
+            for (long[] r : rows) {
+                if (r[0] < afterStart || (r[0] == afterStart && r[1] <= afterEnd)) continue;
+                if (sent == limit) return;
+                visitor.visit(r[0], r[1], null);
+                sent++;
+            }
+        }
+    }
+}
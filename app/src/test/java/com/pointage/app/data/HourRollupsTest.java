@@ -0,0 +1,121 @@
+package com.pointage.app.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Clés de seau et agrégation (séquentielle et par tranches) comparées à un cumul naïf.
+ */
+public class HourRollupsTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private TimeZone saved;
+
+    @Before
+    public void setUp() {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(saved);
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @Test
+    public void buckets() {
+        LocalDate d = LocalDate.of(2024, 12, 30); // semaine 1 de l'année ISO 2025
+        assertEquals(20241230L, HourRollups.bucket(HourRollups.KIND_DAY, d));
+        assertEquals(202501L, HourRollups.bucket(HourRollups.KIND_WEEK, d));
+        assertEquals(202412L, HourRollups.bucket(HourRollups.KIND_MONTH, d));
+        assertEquals(202412L, HourRollups.monthBucket(YearMonth.of(2024, 12)));
+        // jour local, pas UTC : 00:30 à Paris = la veille en UTC
+        long t = ms(2025, 6, 2, 0, 30);
+        assertEquals(20250602L, HourRollups.bucket(HourRollups.KIND_DAY, t, PARIS));
+    }
+
+    @Test
+    public void keyRoundTrip() {
+        long k = HourRollups.key(HourRollups.KIND_DAY, 20251017L, TourClassifier.Period.EVENING.ordinal());
+        assertEquals(HourRollups.KIND_DAY, HourRollups.kindOf(k));
+        assertEquals(20251017L, HourRollups.bucketOf(k));
+        assertEquals(TourClassifier.Period.EVENING.ordinal(), HourRollups.periodOf(k));
+    }
+
+    @Test
+    public void aggregate_smallTable() throws Exception {
+        TourTable t = new TourTable.Builder()
+                .add(ms(2025, 3, 31, 6, 30), ms(2025, 3, 31, 13, 0))   // lundi, matin, 390 min
+                .add(ms(2025, 4, 1, 16, 0), ms(2025, 4, 1, 21, 30))    // mardi, soir, 330 min
+                .add(ms(2025, 4, 1, 6, 0), ms(2025, 4, 1, 12, 0))      // mardi, matin, 360 min
+                .build();
+        Map<Long, Long> sums = HourRollups.aggregate(t);
+
+        int morning = TourClassifier.Period.MORNING.ordinal();
+        int evening = TourClassifier.Period.EVENING.ordinal();
+        assertEquals(390L, (long) sums.get(HourRollups.key(HourRollups.KIND_DAY, 20250331L, morning)));
+        assertEquals(360L, (long) sums.get(HourRollups.key(HourRollups.KIND_DAY, 20250401L, morning)));
+        assertEquals(750L, (long) sums.get(HourRollups.key(HourRollups.KIND_WEEK, 202514L, morning)));
+        assertEquals(330L, (long) sums.get(HourRollups.key(HourRollups.KIND_WEEK, 202514L, evening)));
+        assertEquals(390L, (long) sums.get(HourRollups.key(HourRollups.KIND_MONTH, 202503L, morning)));
+        assertEquals(360L, (long) sums.get(HourRollups.key(HourRollups.KIND_MONTH, 202504L, morning)));
+        assertEquals(330L, (long) sums.get(HourRollups.key(HourRollups.KIND_MONTH, 202504L, evening)));
+        // seaux non vides seulement : jours 3, semaine 2, mois 3
+        assertEquals(8, sums.size());
+    }
+
+    @Test
+    public void aggregate_largeTableMatchesNaiveSums() throws Exception {
+        Random rnd = new Random(7);
+        TourTable.Builder b = new TourTable.Builder();
+        long base = ms(2023, 1, 2, 0, 0);
+        for (int i = 0; i < 20_000; i++) {
+            long start = base + (long) rnd.nextInt(3 * 365 * 24 * 60) * 60_000L;
+            b.add(start, start + (30 + rnd.nextInt(9 * 60)) * 60_000L);
+        }
+        TourTable t = b.build();
+
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < t.size(); i++) {
+            LocalDate d = Instant.ofEpochMilli(t.startAt(i)).atZone(PARIS).toLocalDate();
+            for (int kind : HourRollups.KINDS) {
+                expected.merge(HourRollups.key(kind, HourRollups.bucket(kind, d), t.period(i).ordinal()),
+                        t.durationMin(i), Long::sum);
+            }
+        }
+        assertEquals(expected, HourRollups.aggregate(t));
+    }
+
+    @Test
+    public void totals() {
+        long[] byPeriod = new long[TourClassifier.Period.values().length];
+        byPeriod[TourClassifier.Period.MORNING.ordinal()] = 390L;
+        byPeriod[TourClassifier.Period.EVENING.ordinal()] = 101L;
+        HourRollups.Totals totals = new HourRollups.Totals(byPeriod);
+        assertEquals(491L, totals.minutes());
+        assertEquals(101L, totals.minutes(TourClassifier.Period.EVENING));
+        assertEquals(0L, totals.minutes(TourClassifier.Period.AFTERNOON));
+        assertEquals(8.18, totals.hours(), 1e-9); // 491 / 60 = 8.1833…
+        assertEquals(0L, HourRollups.Totals.ZERO.minutes());
+    }
+
+    private static long ms(int y, int m, int d, int h, int min) {
+        return LocalDateTime.of(y, m, d, h, min).atZone(PARIS).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,108 @@
+package com.pointage.app.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Bornes par défaut 06:00 / 13:45 / 15:30 / 21:45 ; fuseau avec heure d'été (Europe/Paris).
+ */
+public class ShiftRulesTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private final ShiftRules rules = ShiftRules.current();
+    private TimeZone saved;
+
+    @Before
+    public void setUp() {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(saved);
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @Test
+    public void classify_localTimes() {
+        assertEquals(TourClassifier.Period.MORNING, rules.classify(t("08:00"), t("12:00")));
+        assertEquals(TourClassifier.Period.MORNING, rules.classify(t("06:00"), t("13:45")));
+        assertEquals(TourClassifier.Period.EVENING, rules.classify(t("15:30"), t("21:45")));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("05:59"), t("10:00")));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("12:00"), t("16:00")));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("16:00"), t("21:46")));
+        // fin arrondie à la minute supérieure : 13:45:30 dépasse la borne du matin
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("08:00"), LocalTime.of(13, 45, 30)));
+    }
+
+    @Test
+    public void classify_equalStartAndEnd_isAfternoon() {
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("08:00"), t("08:00")));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("18:00"), t("18:00")));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(ms(2025, 3, 3, 8, 0), ms(2025, 3, 3, 8, 0)));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(ms(2025, 3, 3, 18, 0), ms(2025, 3, 3, 18, 0)));
+        // fin avant début (saisie erronée) : même règle
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(ms(2025, 3, 3, 8, 0), ms(2025, 3, 3, 7, 0)));
+    }
+
+    @Test
+    public void classify_pastMidnight_isAfternoon() {
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(t("21:00"), t("01:00")));
+        assertEquals(TourClassifier.Period.AFTERNOON,
+                rules.classify(ms(2025, 3, 3, 21, 0), ms(2025, 3, 4, 1, 0)));
+    }
+
+    @Test
+    public void classify_epochMs_acrossDstChanges() {
+        // dimanches de passage à l'heure d'été / d'hiver
+        assertEquals(TourClassifier.Period.MORNING, rules.classify(ms(2025, 3, 30, 6, 0), ms(2025, 3, 30, 13, 45)));
+        assertEquals(TourClassifier.Period.EVENING, rules.classify(ms(2025, 10, 26, 15, 30), ms(2025, 10, 26, 21, 45)));
+        assertEquals(TourClassifier.Period.AFTERNOON, rules.classify(ms(2025, 10, 26, 5, 0), ms(2025, 10, 26, 9, 0)));
+    }
+
+    @Test
+    public void classify_epochMs_matchesLocalTimes() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0)
+                    .plusDays(rnd.nextInt(365)).plusMinutes(rnd.nextInt(24 * 60));
+            LocalDateTime end = start.plusMinutes(1 + rnd.nextInt(10 * 60));
+            if (!end.toLocalDate().equals(start.toLocalDate())) continue;
+            long s = start.atZone(PARIS).toInstant().toEpochMilli();
+            long e = end.atZone(PARIS).toInstant().toEpochMilli();
+            // heures locales inexistantes (heure d'été) : décalées par atZone, comparaison sans objet
+            if (!start.equals(LocalDateTime.ofInstant(Instant.ofEpochMilli(s), PARIS))
+                    || !end.equals(LocalDateTime.ofInstant(Instant.ofEpochMilli(e), PARIS))) continue;
+            assertEquals(start + " → " + end,
+                    rules.classify(start.toLocalTime(), end.toLocalTime()), rules.classify(s, e));
+        }
+    }
+
+    @Test
+    public void hhmm_padsHoursAndMinutes() {
+        assertEquals("00:00", ShiftRules.hhmm(0));
+        assertEquals("06:05", ShiftRules.hhmm(6 * 60 + 5));
+        assertEquals("21:45", ShiftRules.hhmm(21 * 60 + 45));
+    }
+
+    private static LocalTime t(String hhmm) {
+        return LocalTime.parse(hhmm);
+    }
+
+    private static long ms(int y, int m, int d, int h, int min) {
+        return LocalDateTime.of(y, m, d, h, min).atZone(PARIS).toInstant().toEpochMilli();
+    }
+}
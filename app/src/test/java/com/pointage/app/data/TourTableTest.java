@@ -0,0 +1,96 @@
+package com.pointage.app.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Colonnes + curseur comparés au rendu de TourEntry (même fuseau, mêmes bornes de créneau).
+ */
+public class TourTableTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private TimeZone saved;
+
+    @Before
+    public void setUp() {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(saved);
+        ShiftRules.onTimeZoneChanged();
+    }
+
+    @Test
+    public void builder_growsAndTrims() {
+        TourTable.Builder b = new TourTable.Builder(1);
+        for (int d = 1; d <= 40; d++) b.add(ms(2025, 3, d % 28 + 1, 7, 0), ms(2025, 3, d % 28 + 1, 12, 30));
+        TourTable t = b.build();
+        assertEquals(40, t.size());
+        assertEquals(40 * 330L, t.totalMinutes());
+        assertSame(TourTable.EMPTY, new TourTable.Builder().build());
+        assertEquals(0L, TourTable.EMPTY.totalMinutes());
+    }
+
+    @Test
+    public void totals_byPeriodAndRange() {
+        TourTable t = new TourTable.Builder()
+                .add(ms(2025, 3, 24, 6, 30), ms(2025, 3, 24, 13, 0))   // matin, 390 min
+                .add(ms(2025, 3, 25, 14, 0), ms(2025, 3, 25, 18, 15))  // après-midi, 255 min
+                .add(ms(2025, 3, 30, 16, 0), ms(2025, 3, 30, 21, 30))  // soir (dimanche de l'heure d'été), 330 min
+                .add(ms(2025, 3, 31, 8, 0), ms(2025, 3, 31, 7, 0))     // fin avant début : compté 0
+                .build();
+
+        assertEquals(TourClassifier.Period.MORNING, t.period(0));
+        assertEquals(TourClassifier.Period.AFTERNOON, t.period(1));
+        assertEquals(TourClassifier.Period.EVENING, t.period(2));
+        assertEquals(TourClassifier.Period.AFTERNOON, t.period(3)); // début ≥ fin → après-midi
+        assertEquals(0L, t.durationMin(3));
+
+        assertEquals(975L, t.totalMinutes());
+        assertEquals(390L, t.totalMinutes(TourClassifier.Period.MORNING));
+        assertEquals(255L, t.totalMinutes(TourClassifier.Period.AFTERNOON));
+        assertEquals(330L, t.totalMinutes(TourClassifier.Period.EVENING));
+        // [lundi 24, lundi 31[ : la borne haute est exclue
+        assertEquals(975L, t.totalMinutes(ms(2025, 3, 24, 0, 0), ms(2025, 3, 31, 0, 0)));
+        assertEquals(585L, t.totalMinutes(ms(2025, 3, 25, 0, 0), ms(2025, 3, 31, 8, 0)));
+    }
+
+    @Test
+    public void cursor_matchesTourEntry() {
+        TourTable t = new TourTable.Builder()
+                .add(ms(2025, 10, 26, 1, 30), ms(2025, 10, 26, 9, 0))
+                .add(ms(2025, 12, 31, 22, 0), ms(2026, 1, 1, 2, 0))
+                .build();
+        TourTable.Cursor c = t.cursor();
+        for (int i = 0; i < t.size(); i++) {
+            TourEntry e = TourEntry.from(t.startAt(i), t.endAt(i), t.period(i));
+            c.moveTo(i);
+            assertEquals(i, c.position());
+            assertEquals(e.date, c.date());
+            assertEquals(e.weekday, c.weekday());
+            assertEquals(e.startStr, c.startStr());
+            assertEquals(e.endStr, c.endStr());
+            assertEquals(e.period, c.period());
+            assertEquals(e.durationMin, c.durationMin());
+            assertEquals(e.toString(), c.toString());
+            assertEquals(e.toString(), c.toEntry().toString());
+        }
+    }
+
+    private static long ms(int y, int m, int d, int h, int min) {
+        return LocalDateTime.of(y, m, d, h, min).atZone(PARIS).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,68 @@
+package com.pointage.app.excel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Mini-modèle : D6 = TODAY(), C6 = lundi, B10 = $C$6, G10 = F10-E10, total = SUM(nom défini).
+ */
+public class FormulaRecalcTest {
+
+    @Test
+    public void targeted_refreshesTodayChainAndNamedRanges() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            XSSFSheet sh = wb.createSheet("Semaine");
+            cell(sh, 5, 3).setCellFormula("TODAY()");                    // D6
+            cell(sh, 5, 2).setCellFormula("D6-(WEEKDAY(D6,2)-1)");       // C6
+            cell(sh, 9, 1).setCellFormula("$C$6");                       // B10
+            cell(sh, 9, 4).setCellValue(0.25);                           // E10
+            cell(sh, 9, 5).setCellValue(0.5);                            // F10
+            cell(sh, 9, 6).setCellFormula("F10-E10");                    // G10
+            Name heures = wb.createName();
+            heures.setNameName("Heures");
+            heures.setRefersToFormula("Semaine!$G$10:$G$12");
+            cell(sh, 14, 6).setCellFormula("SUM(Heures)");               // G15
+
+            FormulaRecalc recalc = FormulaRecalc.create(wb);
+            recalc.recalc(Collections.<Cell>emptyList(), FormulaRecalc.Mode.FULL);
+            assertEquals(0.25, sh.getRow(14).getCell(6).getNumericCellValue(), 1e-9);
+
+            // résultat de TODAY() d'un jour passé, comme un classeur gardé en mémoire depuis la veille
+            sh.getRow(5).getCell(3).setCellValue(ExcelHelper.excelDate("2020-01-01"));
+            sh.getRow(5).getCell(2).setCellValue(0);
+            sh.getRow(9).getCell(1).setCellValue(0);
+
+            XSSFCell e10 = sh.getRow(9).getCell(4);
+            e10.setCellValue(0.125);
+            recalc.recalc(Collections.<Cell>singletonList(e10), FormulaRecalc.Mode.TARGETED);
+
+            LocalDate today = LocalDate.now();
+            double monday = ExcelHelper.excelDate(
+                    today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toString());
+            assertEquals(ExcelHelper.excelDate(today.toString()),
+                    sh.getRow(5).getCell(3).getNumericCellValue(), 1e-9);
+            assertEquals(monday, sh.getRow(5).getCell(2).getNumericCellValue(), 1e-9);
+            assertEquals(monday, sh.getRow(9).getCell(1).getNumericCellValue(), 1e-9);
+            assertEquals(0.375, sh.getRow(9).getCell(6).getNumericCellValue(), 1e-9);
+            assertEquals(0.375, sh.getRow(14).getCell(6).getNumericCellValue(), 1e-9);
+        }
+    }
+
+    private static XSSFCell cell(XSSFSheet sh, int row, int col) {
+        XSSFRow r = sh.getRow(row);
+        if (r == null) r = sh.createRow(row);
+        return r.createCell(col);
+    }
+}
@@ -0,0 +1,85 @@
+package com.pointage.app.excel;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Classeur gonflé : un xf par écriture (doublons), comme avant l'internement.
+ */
+public class StyleRegistryTest {
+
+    @Test
+    public void withFormat_internsEquivalentStyles() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            CellStyle base = boldStyle(wb);
+            StyleRegistry reg = StyleRegistry.create(wb);
+            CellStyle first = reg.withFormat(base, "HH:mm");
+            int count = wb.getNumCellStyles();
+            assertSame(first, reg.withFormat(base, "HH:mm"));
+            assertEquals(count, wb.getNumCellStyles());
+            assertEquals("HH:mm", first.getDataFormatString());
+        }
+    }
+
+    @Test
+    public void compact_removesDuplicateXfsFromFile() throws Exception {
+        File xlsx = File.createTempFile("styles", ".xlsx");
+        try {
+            short baseIndex;
+            try (XSSFWorkbook wb = new XSSFWorkbook()) {
+                XSSFSheet sh = wb.createSheet("S");
+                CellStyle base = boldStyle(wb);
+                baseIndex = base.getIndex();
+                for (int r = 0; r < 80; r++) {
+                    XSSFCellStyle dup = wb.createCellStyle();
+                    dup.cloneStyleFrom(base);
+                    sh.createRow(r).createCell(0).setCellStyle(dup);
+                }
+                CellStyle timed = StyleRegistry.create(wb).withFormat(base, "HH:mm");
+                sh.getRow(0).createCell(1).setCellStyle(timed);
+                try (FileOutputStream out = new FileOutputStream(xlsx)) { wb.write(out); }
+            }
+
+            assertEquals(80, StyleCompactor.compact(xlsx, 64));
+            // plus aucun doublon : la réécriture ne se refait pas
+            assertEquals(0, StyleCompactor.compact(xlsx, 0));
+
+            try (XSSFWorkbook wb = new XSSFWorkbook(new FileInputStream(xlsx))) {
+                assertEquals(baseIndex + 2, wb.getNumCellStyles());
+                XSSFSheet sh = wb.getSheetAt(0);
+                for (int r = 0; r < 80; r++) {
+                    XSSFCell c = sh.getRow(r).getCell(0);
+                    assertEquals(baseIndex, c.getCellStyle().getIndex());
+                    assertTrue(c.getCellStyle().getFont().getBold());
+                }
+                CellStyle timed = sh.getRow(0).getCell(1).getCellStyle();
+                assertEquals(baseIndex + 1, timed.getIndex());
+                assertEquals("HH:mm", timed.getDataFormatString());
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            xlsx.delete();
+        }
+    }
+
+    private static CellStyle boldStyle(XSSFWorkbook wb) {
+        Font font = wb.createFont();
+        font.setBold(true);
+        CellStyle s = wb.createCellStyle();
+        s.setFont(font);
+        return s;
+    }
+}
@@ -0,0 +1,145 @@
+package com.pointage.app.excel;
+
+import com.pointage.app.data.TourClassifier;
+import com.pointage.app.data.TourTable;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reconstruction de deux semaines depuis une table de tours, sur le vrai modèle (assets).
+ */
+public class WeekBackfillTest {
+
+    private static final File TEMPLATE = new File("src/main/assets/" + TemplateProvider.ASSET_TEMPLATE);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void rebuild_twoWeeks_writesRowsAndPinsMonday() throws Exception {
+        long mon = at(2025, 3, 3, 8, 0);
+        long monEnd = at(2025, 3, 3, 12, 15);
+        long wed = at(2025, 3, 5, 14, 0);
+        long wedEnd = at(2025, 3, 5, 17, 30);
+        long sun = at(2025, 3, 16, 19, 0);
+        long sunEnd = at(2025, 3, 16, 22, 0);
+        TourTable tours = new TourTable.Builder()
+                .add(mon, monEnd, TourClassifier.Period.MORNING)
+                .add(wed, wedEnd, TourClassifier.Period.AFTERNOON)
+                .add(sun, sunEnd, TourClassifier.Period.EVENING)
+                .build();
+
+        File archives = tmp.newFolder("Pointage");
+        WeekBackfill.Target target = new WeekBackfill.Target() {
+            @Override public void copyTemplate(File dest) throws IOException {
+                Files.copy(TEMPLATE.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            @Override public File archiveFile(String mondayIso) {
+                return new File(archives, "Pointage_" + mondayIso + ".xlsx");
+            }
+        };
+
+        WeekBackfill.Report r = WeekBackfill.rebuild(tours, "Dupont Marie", new File(archives, ".backfill"),
+                target, true, null);
+
+        assertEquals(2, r.weeks);
+        assertEquals(2, r.written);
+        assertEquals(0, r.failed);
+        assertEquals(3, r.tours);
+
+        try (XSSFWorkbook wb = open(target.archiveFile("2025-03-03"))) {
+            Sheet sh = wb.getSheetAt(0);
+            assertMonday(sh, "2025-03-03");
+            assertEquals("Dupont Marie", cell(sh, 4, 2).getStringCellValue());
+            assertTime(sh, 10, mon, monEnd);      // lundi matin
+            assertTime(sh, 22, wed, wedEnd);      // mercredi après-midi
+            assertBlank(sh, 36);
+        }
+        try (XSSFWorkbook wb = open(target.archiveFile("2025-03-10"))) {
+            Sheet sh = wb.getSheetAt(0);
+            assertMonday(sh, "2025-03-10");
+            assertTime(sh, 36, sun, sunEnd);      // dimanche soir
+            assertBlank(sh, 10);
+            assertBlank(sh, 22);
+        }
+        assertTrue(!new File(archives, ".backfill").exists());
+    }
+
+    @Test
+    public void rebuild_keepsExistingArchivesUnlessOverwrite() throws Exception {
+        long mon = at(2025, 3, 3, 8, 0);
+        TourTable tours = new TourTable.Builder().add(mon, mon + 3_600_000L, TourClassifier.Period.MORNING).build();
+        File archives = tmp.newFolder("Pointage");
+        File existing = new File(archives, "Pointage_2025-03-03.xlsx");
+        Files.write(existing.toPath(), new byte[] { 1 });
+        WeekBackfill.Target target = new WeekBackfill.Target() {
+            @Override public void copyTemplate(File dest) throws IOException {
+                Files.copy(TEMPLATE.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            @Override public File archiveFile(String mondayIso) {
+                return new File(archives, "Pointage_" + mondayIso + ".xlsx");
+            }
+        };
+
+        WeekBackfill.Report r = WeekBackfill.rebuild(tours, null, new File(archives, ".backfill"), target, false, null);
+
+        assertEquals(0, r.weeks);
+        assertEquals(1, r.skipped);
+        assertEquals(1L, existing.length());
+    }
+
+    // ------------------- Outils -------------------
+
+    private static long at(int y, int m, int d, int h, int min) {
+        return LocalDateTime.of(y, m, d, h, min).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static XSSFWorkbook open(File f) throws IOException {
+        assertTrue(f.getName(), f.isFile());
+        try (FileInputStream in = new FileInputStream(f)) {
+            return new XSSFWorkbook(in);
+        }
+    }
+
+    /** Cellule (ligne 1-based, colonne 0-based). */
+    private static Cell cell(Sheet sh, int row1, int col) {
+        Row r = sh.getRow(row1 - 1);
+        return (r != null) ? r.getCell(col) : null;
+    }
+
+    private static void assertMonday(Sheet sh, String mondayIso) {
+        Cell d6 = cell(sh, 6, 3);
+        assertEquals(CellType.NUMERIC, d6.getCellTypeEnum());
+        assertEquals(ExcelHelper.excelDate(mondayIso), d6.getNumericCellValue(), 1e-9);
+    }
+
+    private static void assertTime(Sheet sh, int row1, long start, long end) {
+        assertEquals(DateUtil.getExcelDate(new Date(start)), cell(sh, row1, 4).getNumericCellValue(), 1e-6);
+        assertEquals(DateUtil.getExcelDate(new Date(end)), cell(sh, row1, 5).getNumericCellValue(), 1e-6);
+    }
+
+    private static void assertBlank(Sheet sh, int row1) {
+        Cell e = cell(sh, row1, 4);
+        assertTrue("E" + row1, e == null || e.getCellTypeEnum() == CellType.BLANK);
+    }
+}
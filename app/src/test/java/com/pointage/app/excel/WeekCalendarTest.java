@@ -0,0 +1,102 @@
+package com.pointage.app.excel;
+
+import com.pointage.app.data.TourClassifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fuseau avec heure d'été (Europe/Paris) : semaines de 167 h / 169 h, bascule d'année ISO.
+ */
+public class WeekCalendarTest {
+
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private TimeZone saved;
+
+    @Before
+    public void setUp() {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+        WeekCalendar.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(saved);
+        WeekCalendar.invalidate();
+    }
+
+    @Test
+    public void springForwardWeek() {
+        // dimanche 30/03/2025 : 02:00 → 03:00, la semaine ne fait que 167 h
+        assertDay(LocalDateTime.of(2025, 3, 24, 0, 0), 0, "2025-03-24", 202513);
+        assertDay(LocalDateTime.of(2025, 3, 30, 1, 59), 6, "2025-03-24", 202513);
+        assertDay(LocalDateTime.of(2025, 3, 30, 3, 0), 6, "2025-03-24", 202513);
+        assertDay(LocalDateTime.of(2025, 3, 30, 23, 59), 6, "2025-03-24", 202513);
+        assertDay(LocalDateTime.of(2025, 3, 31, 0, 0), 0, "2025-03-31", 202514);
+    }
+
+    @Test
+    public void fallBackWeek() {
+        // dimanche 26/10/2025 : 03:00 → 02:00, la semaine fait 169 h
+        assertDay(LocalDateTime.of(2025, 10, 26, 0, 0), 6, "2025-10-20", 202543);
+        assertDay(LocalDateTime.of(2025, 10, 26, 23, 59), 6, "2025-10-20", 202543);
+        assertDay(LocalDateTime.of(2025, 10, 27, 0, 0), 0, "2025-10-27", 202544);
+        long lastMinute = ms(LocalDateTime.of(2025, 10, 27, 0, 0)) - 1;
+        assertEquals(6, WeekCalendar.dayOffset(lastMinute));
+        assertEquals("2025-10-20", WeekCalendar.mondayIso(lastMinute));
+    }
+
+    @Test
+    public void isoYearBoundary() {
+        // lundi 30/12/2024 = semaine 1 de l'année ISO 2025
+        assertDay(LocalDateTime.of(2024, 12, 29, 23, 59), 6, "2024-12-23", 202452);
+        assertDay(LocalDateTime.of(2024, 12, 30, 8, 0), 0, "2024-12-30", 202501);
+        assertDay(LocalDateTime.of(2025, 1, 5, 20, 0), 6, "2024-12-30", 202501);
+    }
+
+    @Test
+    public void mondayStartAndEpochDay() {
+        long t = ms(LocalDateTime.of(2025, 10, 26, 12, 0));
+        assertEquals(ms(LocalDateTime.of(2025, 10, 20, 0, 0)), WeekCalendar.mondayStartMs(t));
+        assertEquals(LocalDate.of(2025, 10, 26).toEpochDay(), WeekCalendar.epochDay(t));
+        assertEquals(LocalDate.of(2025, 10, 20).toEpochDay(), WeekCalendar.mondayEpochDay(t));
+    }
+
+    @Test
+    public void rows() {
+        assertEquals(10, WeekCalendar.row(TourClassifier.Period.MORNING, 0));
+        assertEquals(26, WeekCalendar.row(TourClassifier.Period.AFTERNOON, 6));
+        assertEquals(33, WeekCalendar.row(TourClassifier.Period.EVENING, 3));
+        // dimanche de la semaine d'été → soir, ligne 36
+        long sunday = ms(LocalDateTime.of(2025, 3, 30, 22, 0));
+        assertEquals(36, WeekCalendar.row(sunday, TourClassifier.Period.EVENING));
+    }
+
+    @Test
+    public void farInstantExtendsTable() {
+        // hors de la fenêtre initiale (~2 ans) : la table s'étend sans fausser les semaines déjà connues
+        assertDay(LocalDateTime.of(2001, 9, 12, 10, 0), 2, "2001-09-10", 200137);
+        assertDay(LocalDateTime.of(2025, 3, 31, 0, 0), 0, "2025-03-31", 202514);
+    }
+
+    private static void assertDay(LocalDateTime local, int day, String monday, int weekId) {
+        long t = ms(local);
+        assertEquals(local.toString(), day, WeekCalendar.dayOffset(t));
+        assertEquals(local.toString(), monday, WeekCalendar.mondayIso(t));
+        assertEquals(local.toString(), weekId, WeekCalendar.weekId(t));
+    }
+
+    private static long ms(LocalDateTime local) {
+        return local.atZone(PARIS).toInstant().toEpochMilli();
+    }
+}